@@ -0,0 +1,36 @@
+package com.mediaalterations.mediaservice.config;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * AsyncAppender that counts the events it throws away, either because the
+ * queue is past the discarding threshold (INFO and below) or because it is
+ * full and neverBlock is set. Logback instantiates this from
+ * logback-spring.xml before Spring starts, hence the static counter.
+ */
+public class DropCountingAsyncAppender extends AsyncAppender {
+
+    private static final AtomicLong DROPPED = new AtomicLong();
+
+    public static AtomicLong droppedEvents() {
+        return DROPPED;
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        if (isStarted() && willDrop(event)) {
+            DROPPED.incrementAndGet();
+        }
+        super.append(event);
+    }
+
+    // mirrors AsyncAppenderBase.append/put; racy, but good enough for a metric
+    private boolean willDrop(ILoggingEvent event) {
+        int remaining = getRemainingCapacity();
+        return (remaining < getDiscardingThreshold() && isDiscardable(event))
+                || (isNeverBlock() && remaining == 0);
+    }
+}
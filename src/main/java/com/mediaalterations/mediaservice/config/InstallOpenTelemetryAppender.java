@@ -1,7 +1,11 @@
 package com.mediaalterations.mediaservice.config;
 
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
 import io.opentelemetry.api.OpenTelemetry;
 import io.opentelemetry.instrumentation.logback.appender.v1_0.OpenTelemetryAppender;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Component;
 
@@ -17,5 +21,21 @@ class InstallOpenTelemetryAppender implements InitializingBean {
     @Override
     public void afterPropertiesSet() {
         OpenTelemetryAppender.install(this.openTelemetry);
+
+        // install() only sees appenders attached directly to a logger,
+        // the OTEL appender sits behind ASYNC_OTEL
+        if (LoggerFactory.getILoggerFactory() instanceof LoggerContext loggerContext) {
+            for (Logger logger : loggerContext.getLoggerList()) {
+                logger.iteratorForAppenders().forEachRemaining(appender -> {
+                    if (appender instanceof AsyncAppender async) {
+                        async.iteratorForAppenders().forEachRemaining(nested -> {
+                            if (nested instanceof OpenTelemetryAppender otel) {
+                                otel.setOpenTelemetry(this.openTelemetry);
+                            }
+                        });
+                    }
+                });
+            }
+        }
     }
 }
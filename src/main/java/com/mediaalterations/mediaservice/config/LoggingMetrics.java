@@ -0,0 +1,17 @@
+package com.mediaalterations.mediaservice.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+class LoggingMetrics {
+
+    LoggingMetrics(MeterRegistry meterRegistry) {
+        FunctionCounter.builder("logging.async.dropped", DropCountingAsyncAppender.droppedEvents(), AtomicLong::get)
+                .description("Log events dropped by the async appenders instead of blocking the caller")
+                .register(meterRegistry);
+    }
+}
@@ -1,8 +1,10 @@
 package com.mediaalterations.mediaservice.config;
 
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.ContainerCustomizer;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
 import org.springframework.amqp.support.converter.JacksonJsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
@@ -21,15 +23,45 @@ public class RabbitMQConfig {
     @Value("${rabbitmq.exchange.kill}")
     private String killExchange;
 
+    @Value("${rabbitmq.exchange.kill.direct}")
+    private String killDirectExchange;
+
+    @Value("${rabbitmq.exchange.cluster}")
+    private String clusterExchange;
+
     @Value("${rabbitmq.queue.process}")
     private String queue;
 
     @Value("${rabbitmq.queue.process.routingKey}")
     private String routingKey;
 
+    @Value("${rabbitmq.queue.preview}")
+    private String previewQueue;
+
+    @Value("${rabbitmq.queue.preview.routingKey}")
+    private String previewRoutingKey;
+
+    @Value("${rabbitmq.queue.abr}")
+    private String abrQueue;
+
+    @Value("${rabbitmq.queue.abr.routingKey}")
+    private String abrRoutingKey;
+
+    @Value("${rabbitmq.queue.batch}")
+    private String batchQueue;
+
+    @Value("${rabbitmq.queue.batch.routingKey}")
+    private String batchRoutingKey;
+
     @Value("${rabbitmq.queue.kill.routingKey}")
     private String killRoutingKey;
 
+    @Value("${rabbitmq.queue.cluster.routingKey}")
+    private String heartbeatRoutingKey;
+
+    @Value("${media.node.id}")
+    private String nodeId;
+
     @Bean
     public Queue orderQueue() {
         // a durable queue is a queue whose metadata is stored on disk and that will
@@ -37,6 +69,21 @@ public class RabbitMQConfig {
         return QueueBuilder.durable(queue).build();
     }
 
+    @Bean
+    public Queue previewQueue() {
+        return QueueBuilder.durable(previewQueue).build();
+    }
+
+    @Bean
+    public Queue abrQueue() {
+        return QueueBuilder.durable(abrQueue).build();
+    }
+
+    @Bean
+    public Queue batchQueue() {
+        return QueueBuilder.durable(batchQueue).build();
+    }
+
     // Each instance creates its OWN anonymous queue and binds to the fanout
     // exchange
     @Bean
@@ -45,6 +92,12 @@ public class RabbitMQConfig {
         return new AnonymousQueue();
     }
 
+    // unique queue per instance so every node builds the full cluster view
+    @Bean
+    public Queue clusterQueue() {
+        return new AnonymousQueue();
+    }
+
     // FanoutExchange, DirectExchange, HeadersExchange
     @Bean
     public TopicExchange orderExchange() {
@@ -61,6 +114,17 @@ public class RabbitMQConfig {
         return new FanoutExchange(killExchange);
     }
 
+    // kills addressed to the node that owns the job, routing key = node id
+    @Bean
+    public DirectExchange killDirectExchange() {
+        return new DirectExchange(killDirectExchange);
+    }
+
+    @Bean
+    public TopicExchange clusterExchange() {
+        return new TopicExchange(clusterExchange);
+    }
+
     @Bean
     public MessageConverter jsonMessageConverter() {
         return new JacksonJsonMessageConverter();
@@ -74,6 +138,30 @@ public class RabbitMQConfig {
                 .with(routingKey);
     }
 
+    @Bean
+    public Binding previewBinding() {
+        return BindingBuilder
+                .bind(previewQueue())
+                .to(orderExchange())
+                .with(previewRoutingKey);
+    }
+
+    @Bean
+    public Binding abrBinding() {
+        return BindingBuilder
+                .bind(abrQueue())
+                .to(orderExchange())
+                .with(abrRoutingKey);
+    }
+
+    @Bean
+    public Binding batchBinding() {
+        return BindingBuilder
+                .bind(batchQueue())
+                .to(orderExchange())
+                .with(batchRoutingKey);
+    }
+
     @Bean
     public Binding killBinding() {
         return BindingBuilder
@@ -81,6 +169,30 @@ public class RabbitMQConfig {
                 .to(killExchange());
     }
 
+    @Bean
+    public Binding killDirectBinding() {
+        return BindingBuilder
+                .bind(killQueue())
+                .to(killDirectExchange())
+                .with(nodeId);
+    }
+
+    @Bean
+    public Binding clusterBinding() {
+        return BindingBuilder
+                .bind(clusterQueue())
+                .to(clusterExchange())
+                .with(heartbeatRoutingKey);
+    }
+
+    // JobSlots stops listener containers while a job runs on one of their
+    // consumers; let that job finish and ack instead of closing its channel
+    // after the shutdown timeout, which would redeliver it elsewhere
+    @Bean
+    public ContainerCustomizer<SimpleMessageListenerContainer> listenerContainerCustomizer() {
+        return container -> container.setForceCloseChannel(false);
+    }
+
     @Bean
     public RabbitTemplate rabbitTemplate(final ConnectionFactory connectionFactory) {
         RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
@@ -0,0 +1,26 @@
+package com.mediaalterations.mediaservice.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public record AbrLadderDto(
+
+                UUID id,
+
+                String storageInputPath,
+
+                // storage entry of the master playlist / manifest
+                String storageIdOutput,
+                // every playlist and segment is uploaded under this key prefix
+                String storageOutputPrefix,
+
+                StreamingFormat format,
+                List<RenditionDto> renditions,
+                // optional, defaults to media.abr.segment-seconds
+                Integer segmentSeconds,
+
+                String userId,
+
+                LocalDateTime created_at) {
+}
@@ -0,0 +1,20 @@
+package com.mediaalterations.mediaservice.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public record BatchJobDto(
+
+                UUID id,
+
+                // storageIdInput , storageInputPath, fetched once for all steps
+                Map<String, String> storageInputDetails,
+
+                List<BatchStepDto> steps,
+
+                String userId,
+
+                LocalDateTime created_at) {
+}
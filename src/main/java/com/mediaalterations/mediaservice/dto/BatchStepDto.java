@@ -0,0 +1,22 @@
+package com.mediaalterations.mediaservice.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+public record BatchStepDto(
+
+                // process id the step reports its status under
+                UUID id,
+
+                // may reference the job's storage input paths and outputName of earlier steps
+                String command,
+                // token used for this step's output in its own and downstream commands, e.g. "trimmed.mp4"
+                String outputName,
+
+                // ids of steps that must finish first, steps without dependencies run in parallel
+                List<UUID> dependsOn,
+
+                // set only for final outputs, intermediate outputs stay in local scratch
+                String storageIdOutput,
+                String storageOutputPath) {
+}
@@ -14,4 +14,11 @@ public class FfmpegCmdResponse {
     private String duration;
     private String finalFileSize;
     private ProcessStatus status;
+    // realtime factor reported by ffmpeg, e.g. 2.5 for "speed=2.5x"
+    private double speed;
+    // frames encoded per second
+    private double fps;
+    private long etaSeconds;
+    // media-service instance running the job, kills can be routed to it directly
+    private String nodeId;
 }
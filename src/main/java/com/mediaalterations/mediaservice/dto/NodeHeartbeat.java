@@ -0,0 +1,20 @@
+package com.mediaalterations.mediaservice.dto;
+
+import java.util.Set;
+
+public record NodeHeartbeat(
+
+                String nodeId,
+
+                int maxSlots,
+                int freeSlots,
+
+                // system load average divided by available processors, -1 if unknown
+                double cpuLoad,
+                long scratchFreeBytes,
+
+                // processIds currently running ffmpeg on this node
+                Set<String> runningJobs,
+
+                long timestamp) {
+}
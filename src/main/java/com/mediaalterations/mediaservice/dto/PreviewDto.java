@@ -0,0 +1,28 @@
+package com.mediaalterations.mediaservice.dto;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public record PreviewDto(
+
+                UUID id,
+
+                String storageInputPath,
+
+                // single poster frame
+                String posterStorageId,
+                String posterOutputPath,
+
+                // seek-preview sprite sheet, columns x rows tiles
+                String spriteStorageId,
+                String spriteOutputPath,
+
+                // optional, defaults from media.preview.* when null
+                Integer spriteColumns,
+                Integer spriteRows,
+                Integer tileWidth,
+
+                String userId,
+
+                LocalDateTime created_at) {
+}
@@ -0,0 +1,12 @@
+package com.mediaalterations.mediaservice.dto;
+
+public record RenditionDto(
+
+                // used as the variant directory / representation name, e.g. "720p"
+                String name,
+                int height,
+
+                // ffmpeg bitrate syntax, e.g. "3000k"
+                String videoBitrate,
+                String audioBitrate) {
+}
@@ -0,0 +1,15 @@
+package com.mediaalterations.mediaservice.dto;
+
+public record RenditionProgress(
+
+                String processId,
+                String rendition,
+
+                int progress,
+                int segmentsUploaded,
+                int segmentsExpected,
+
+                ProcessStatus status,
+
+                String nodeId) {
+}
@@ -0,0 +1,5 @@
+package com.mediaalterations.mediaservice.dto;
+
+public enum StreamingFormat {
+    HLS, DASH
+}
@@ -0,0 +1,37 @@
+package com.mediaalterations.mediaservice.messaging;
+
+import com.mediaalterations.mediaservice.dto.AbrLadderDto;
+import com.mediaalterations.mediaservice.service.AbrLadderService;
+import com.mediaalterations.mediaservice.service.JobSlots;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class AbrLadderListener {
+
+    private final AbrLadderService abrLadderService;
+    private final JobSlots jobSlots;
+
+    // one ladder already runs N encodes, keep concurrency low
+    @RabbitListener(id = JobSlots.ABR_LISTENER, queues = "media.abr.queue", concurrency = "1-2")
+    public void handleLadderEvents(AbrLadderDto event) {
+        if (!jobSlots.tryAcquire(JobSlots.Pool.ENCODE, event.id().toString())) {
+            // back to the broker, another node (or this one, once a slot frees up) takes it
+            throw new ImmediateRequeueAmqpException("No free encode slot on this node");
+        }
+        log.info("Received ABR ladder request: {}", event.id());
+        try {
+            abrLadderService.packageLadder(event);
+        } catch (Exception e) {
+            log.error("Couldn't package the ABR ladder. {}", event.id());
+        } finally {
+            jobSlots.release(JobSlots.Pool.ENCODE, event.id().toString());
+        }
+    }
+
+}
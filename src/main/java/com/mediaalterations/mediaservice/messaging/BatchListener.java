@@ -0,0 +1,36 @@
+package com.mediaalterations.mediaservice.messaging;
+
+import com.mediaalterations.mediaservice.dto.BatchJobDto;
+import com.mediaalterations.mediaservice.service.JobSlots;
+import com.mediaalterations.mediaservice.service.MediaService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class BatchListener {
+
+    private final MediaService mediaService;
+    private final JobSlots jobSlots;
+
+    @RabbitListener(id = JobSlots.BATCH_LISTENER, queues = "media.batch.queue", concurrency = "1-2")
+    public void handleBatchEvents(BatchJobDto event) {
+        if (!jobSlots.tryAcquire(JobSlots.Pool.ENCODE, event.id().toString())) {
+            // back to the broker, another node (or this one, once a slot frees up) takes it
+            throw new ImmediateRequeueAmqpException("No free encode slot on this node");
+        }
+        log.info("Received batch: {} with {} steps", event.id(), event.steps() == null ? 0 : event.steps().size());
+        try {
+            mediaService.workOnBatch(event);
+        } catch (Exception e) {
+            log.error("Couldn't process the batch. {}", event.id());
+        } finally {
+            jobSlots.release(JobSlots.Pool.ENCODE, event.id().toString());
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.mediaalterations.mediaservice.messaging;
+
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+import com.mediaalterations.mediaservice.dto.NodeHeartbeat;
+import com.mediaalterations.mediaservice.service.ClusterView;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ClusterHeartbeatListener {
+
+    private final ClusterView clusterView;
+
+    // every instance has its own anonymous queue so it sees every heartbeat
+    @RabbitListener(queues = "#{clusterQueue.name}")
+    public void handleHeartbeat(NodeHeartbeat heartbeat) {
+        log.debug("Heartbeat received. nodeId={}, freeSlots={}", heartbeat.nodeId(), heartbeat.freeSlots());
+        clusterView.update(heartbeat);
+    }
+
+}
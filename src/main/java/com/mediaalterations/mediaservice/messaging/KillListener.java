@@ -2,19 +2,27 @@ package com.mediaalterations.mediaservice.messaging;
 
 import org.springframework.amqp.AmqpRejectAndDontRequeueException;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.mediaalterations.mediaservice.service.ClusterView;
 import com.mediaalterations.mediaservice.service.MediaService;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Optional;
+
 @Component
 @Slf4j
 @RequiredArgsConstructor
 public class KillListener {
 
     private final MediaService mediaService;
+    private final ClusterView clusterView;
+
+    @Value("${media.node.id}")
+    private String nodeId;
 
     // "#{killQueue.name}" — Spring EL that reads the name of the AnonymousQueue
     // bean
@@ -22,6 +30,19 @@ public class KillListener {
     @RabbitListener(queues = "#{killQueue.name}")
     public void handleKill(String processId) {
         log.info("Request received for process kill, processId:{}", processId);
+
+        // the queue gets both the fanout broadcast and kills routed to this node;
+        // only the node that took the job acts on it, the others drop it quietly
+        if (!mediaService.getActiveProcessIds().contains(processId)) {
+            if (mediaService.cancelPending(processId)) {
+                return;
+            }
+            Optional<String> owner = clusterView.ownerOf(processId).filter(id -> !id.equals(nodeId));
+            log.debug("Ignoring kill, processId:{} is not on this node, owner:{}", processId,
+                    owner.orElse("unknown"));
+            return;
+        }
+
         try {
             mediaService.killProcess(processId);
         } catch (Exception e) {
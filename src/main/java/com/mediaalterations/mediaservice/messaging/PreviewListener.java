@@ -0,0 +1,38 @@
+package com.mediaalterations.mediaservice.messaging;
+
+import com.mediaalterations.mediaservice.dto.PreviewDto;
+import com.mediaalterations.mediaservice.service.JobSlots;
+import com.mediaalterations.mediaservice.service.PreviewService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PreviewListener {
+
+    private final PreviewService previewService;
+    private final JobSlots jobSlots;
+
+    // own queue, consumers and slots so previews never wait behind full encodes
+    @RabbitListener(id = JobSlots.PREVIEW_LISTENER, queues = "media.preview.queue",
+            concurrency = "${media.node.preview-slots:2}")
+    public void handlePreviewEvents(PreviewDto event) {
+        if (!jobSlots.tryAcquire(JobSlots.Pool.PREVIEW, event.id().toString())) {
+            // back to the broker, another node (or this one, once a slot frees up) takes it
+            throw new ImmediateRequeueAmqpException("No free preview slot on this node");
+        }
+        log.info("Received preview request: {}", event.id());
+        try {
+            previewService.generatePreview(event);
+        } catch (Exception e) {
+            log.error("Couldn't generate the preview. {}", event.id());
+        } finally {
+            jobSlots.release(JobSlots.Pool.PREVIEW, event.id().toString());
+        }
+    }
+
+}
@@ -1,9 +1,11 @@
 package com.mediaalterations.mediaservice.messaging;
 
 import com.mediaalterations.mediaservice.dto.ProcessDto;
+import com.mediaalterations.mediaservice.service.JobSlots;
 import com.mediaalterations.mediaservice.service.MediaService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
 
@@ -13,14 +15,21 @@ import org.springframework.stereotype.Component;
 public class ProcessListener {
 
     private final MediaService mediaService;
+    private final JobSlots jobSlots;
 
-    @RabbitListener(queues = "media.process.queue", concurrency = "2-4")
+    @RabbitListener(id = JobSlots.PROCESS_LISTENER, queues = "media.process.queue", concurrency = "2-4")
     public void handleAllOrderEvents(ProcessDto event) {
+        if (!jobSlots.tryAcquire(JobSlots.Pool.ENCODE, event.id().toString())) {
+            // back to the broker, another node (or this one, once a slot frees up) takes it
+            throw new ImmediateRequeueAmqpException("No free encode slot on this node");
+        }
         log.info("Received: {}", event);
         try {
             mediaService.workOnProcess(event);
         } catch (Exception e) {
             log.error("Couldn't process the command. {}", event.id());
+        } finally {
+            jobSlots.release(JobSlots.Pool.ENCODE, event.id().toString());
         }
     }
 
@@ -7,6 +7,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.mediaalterations.mediaservice.dto.FfmpegCmdResponse;
+import com.mediaalterations.mediaservice.dto.NodeHeartbeat;
+import com.mediaalterations.mediaservice.dto.RenditionProgress;
 
 @Service
 @RequiredArgsConstructor
@@ -21,12 +23,37 @@ public class RabbitMQProducer {
     @Value("${rabbitmq.queue.progress.routingKey}")
     private String ffmpegProgressRoutingKey;
 
+    @Value("${rabbitmq.queue.progress.rendition.routingKey}")
+    private String renditionProgressRoutingKey;
+
+    @Value("${rabbitmq.exchange.cluster}")
+    private String clusterExchange;
+
+    @Value("${rabbitmq.queue.cluster.routingKey}")
+    private String heartbeatRoutingKey;
+
     public void publishFfmpegProcessProgress(FfmpegCmdResponse event) {
-        log.info("Publishing Ffmpeg process progress: pid={} processId={} progress={}", event.getPid(),
+        log.debug("Publishing Ffmpeg process progress: pid={} processId={} progress={}", event.getPid(),
                 event.getProcessId(), event.getProgress());
         rabbitTemplate.convertAndSend(
                 exchange,
                 ffmpegProgressRoutingKey,
                 event);
     }
+
+    public void publishRenditionProgress(RenditionProgress event) {
+        log.debug("Publishing rendition progress: processId={} rendition={} progress={}", event.processId(),
+                event.rendition(), event.progress());
+        rabbitTemplate.convertAndSend(
+                exchange,
+                renditionProgressRoutingKey,
+                event);
+    }
+
+    public void publishNodeHeartbeat(NodeHeartbeat heartbeat) {
+        rabbitTemplate.convertAndSend(
+                clusterExchange,
+                heartbeatRoutingKey,
+                heartbeat);
+    }
 }
@@ -0,0 +1,7 @@
+package com.mediaalterations.mediaservice.service;
+
+import com.mediaalterations.mediaservice.dto.AbrLadderDto;
+
+public interface AbrLadderService {
+    void packageLadder(AbrLadderDto ladder);
+}
@@ -0,0 +1,479 @@
+package com.mediaalterations.mediaservice.service;
+
+import com.mediaalterations.mediaservice.dto.AbrLadderDto;
+import com.mediaalterations.mediaservice.dto.FfmpegCmdResponse;
+import com.mediaalterations.mediaservice.dto.ProcessStatus;
+import com.mediaalterations.mediaservice.dto.RenditionDto;
+import com.mediaalterations.mediaservice.dto.RenditionProgress;
+import com.mediaalterations.mediaservice.dto.StreamingFormat;
+import com.mediaalterations.mediaservice.exception.MediaProcessingException;
+import com.mediaalterations.mediaservice.feignClients.MainClient;
+import com.mediaalterations.mediaservice.feignClients.StorageClient;
+import com.mediaalterations.mediaservice.messaging.RabbitMQProducer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/*
+ * Adaptive bitrate ladder in a single ffmpeg run: the source is read once
+ * (through a presigned url), decoded once, split into one scaled encode per
+ * rendition and packaged as HLS or DASH.
+ *
+ * Segments are uploaded while ffmpeg is still running. A segment is done once
+ * a later segment of the same rendition shows up; whatever is left, plus the
+ * playlists/manifest, goes up after ffmpeg exits. That last sweep retries
+ * failed uploads and fails the job if anything is still missing.
+ */
+@RequiredArgsConstructor
+@Slf4j
+@Service
+public class AbrLadderServiceImpl implements AbrLadderService {
+
+    // segment_00012.ts (HLS) / chunk-3-00012.m4s (DASH, named by -media_seg_name)
+    private static final Pattern HLS_SEGMENT = Pattern.compile("segment_(\\d+)\\.ts");
+    private static final Pattern DASH_SEGMENT = Pattern.compile("chunk-(\\d+)-(\\d+)\\.m4s");
+
+    // rendition names become directory names and -var_stream_map entries
+    private static final Pattern RENDITION_NAME = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+    // ffmpeg bitrate syntax: 3000k, 2.5M, 128000
+    private static final Pattern BITRATE = Pattern.compile("\\d+(\\.\\d+)?[kKmM]?");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Value("${ffmpeg.path}")
+    private String ffmpegExePath;
+
+    @Value("${garage.bucket.downloads}")
+    private String downloadsBucket;
+
+    @Value("${media.node.id}")
+    private String nodeId;
+
+    @Value("${media.abr.segment-seconds:6}")
+    private int defaultSegmentSeconds;
+
+    @Value("${media.abr.preset:veryfast}")
+    private String preset;
+
+    @Value("${media.abr.upload-interval-seconds:2}")
+    private long uploadIntervalSeconds;
+
+    @Value("${media.abr.final-upload-attempts:3}")
+    private int finalUploadAttempts;
+
+    private final MediaService mediaService;
+    private final GaragePresigner garagePresigner;
+    private final RabbitMQProducer progressProducer;
+    private final MainClient mainClient;
+    private final StorageClient storageClient;
+
+    private final S3Client s3Client;
+
+    @Override
+    public void packageLadder(AbrLadderDto ladder) {
+
+        log.info("Starting ABR ladder packaging. processId={}, format={}", ladder.id(), ladder.format());
+
+        FfmpegCmdResponse ffmpegCmdRes = new FfmpegCmdResponse(-1L, ladder.id().toString(), 0, "00:00:00:00.0000",
+                "0 KB", ProcessStatus.WAITING, 0, 0, -1, nodeId);
+
+        Path outputDir = null;
+        ScheduledExecutorService uploader = null;
+
+        try {
+            validate(ladder);
+
+            outputDir = Files.createTempDirectory("abr-");
+            if (ladder.format() == StreamingFormat.HLS) {
+                // one directory per variant (%v)
+                for (RenditionDto rendition : ladder.renditions()) {
+                    Files.createDirectories(outputDir.resolve(rendition.name()));
+                }
+            }
+
+            String url = garagePresigner.presignedGetUrl(ladder.storageInputPath());
+            JsonNode probe = MAPPER.readTree(mediaService.probe(url));
+            double duration = probe.path("format").path("duration").asDouble(0.0);
+            if (duration <= 0) {
+                throw new MediaProcessingException("Invalid media duration detected");
+            }
+            boolean hasAudio = false;
+            for (JsonNode stream : probe.path("streams")) {
+                if ("audio".equals(stream.path("codec_type").asString())) {
+                    hasAudio = true;
+                    break;
+                }
+            }
+
+            int segmentSeconds = ladder.segmentSeconds() != null ? ladder.segmentSeconds() : defaultSegmentSeconds;
+            List<String> command = buildLadderCommand(url, ladder, segmentSeconds, hasAudio, outputDir);
+
+            SegmentUploader segments = new SegmentUploader(ladder, outputDir,
+                    (int) Math.ceil(duration / segmentSeconds), hasAudio);
+            uploader = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().factory());
+            uploader.scheduleWithFixedDelay(() -> segments.uploadSettled(false), uploadIntervalSeconds,
+                    uploadIntervalSeconds, TimeUnit.SECONDS);
+
+            boolean success = mediaService.executeWithProgress(
+                    command,
+                    it -> {
+                        ffmpegCmdRes.setPid(it.getPid());
+                        ffmpegCmdRes.setDuration(it.getDuration());
+                        ffmpegCmdRes.setProgress(it.getProgress());
+                        ffmpegCmdRes.setFinalFileSize(it.getFinalFileSize());
+                        ffmpegCmdRes.setSpeed(it.getSpeed());
+                        ffmpegCmdRes.setFps(it.getFps());
+                        ffmpegCmdRes.setEtaSeconds(it.getEtaSeconds());
+                        ffmpegCmdRes.setStatus(ProcessStatus.PROCESSING);
+                        progressProducer.publishFfmpegProcessProgress(ffmpegCmdRes);
+                    },
+                    (long) (duration * 1000), ladder.id().toString());
+
+            uploader.shutdown();
+            uploader.awaitTermination(1, TimeUnit.MINUTES);
+
+            if (!success) {
+                throw new MediaProcessingException("FFmpeg ABR packaging failed");
+            }
+
+            segments.uploadRemaining();
+
+            String finalFileSize = segments.uploadedBytes() / 1024 + " KB";
+            mainClient.updateStatusForProcess(
+                    ProcessStatus.COMPLETED,
+                    finalFileSize,
+                    ffmpegCmdRes.getDuration(),
+                    ladder.id().toString());
+
+            ffmpegCmdRes.setFinalFileSize(finalFileSize);
+            ffmpegCmdRes.setStatus(ProcessStatus.COMPLETED);
+            ffmpegCmdRes.setProgress(100);
+            ffmpegCmdRes.setEtaSeconds(0);
+            progressProducer.publishFfmpegProcessProgress(ffmpegCmdRes);
+
+            storageClient.makeFileDownloadable(ladder.storageIdOutput());
+            log.info("ABR ladder packaging completed. processId={}", ladder.id());
+
+        } catch (Exception ex) {
+
+            log.error("ABR ladder packaging failed. processId={}, errorMessage={}", ladder.id(), ex.getMessage(),
+                    ex);
+
+            mainClient.updateStatusForProcess(
+                    ProcessStatus.FAILED,
+                    ffmpegCmdRes.getFinalFileSize(),
+                    ffmpegCmdRes.getDuration(),
+                    ladder.id().toString());
+
+            ffmpegCmdRes.setStatus(ProcessStatus.FAILED);
+            progressProducer.publishFfmpegProcessProgress(ffmpegCmdRes);
+
+            throw new MediaProcessingException("ABR ladder packaging failed", ex);
+        } finally {
+            if (uploader != null) {
+                uploader.shutdownNow();
+            }
+            deleteTempDirectory(outputDir);
+        }
+    }
+
+    // ===================== VALIDATION =====================
+
+    // everything here ends up in paths or ffmpeg arguments, reject it before either is built
+    static void validate(AbrLadderDto ladder) {
+        if (ladder.format() == null) {
+            throw new MediaProcessingException("ABR ladder needs a streaming format");
+        }
+        if (ladder.storageInputPath() == null || ladder.storageInputPath().isBlank()
+                || ladder.storageOutputPrefix() == null || ladder.storageOutputPrefix().isBlank()) {
+            throw new MediaProcessingException("ABR ladder needs an input path and an output prefix");
+        }
+        if (ladder.segmentSeconds() != null && ladder.segmentSeconds() <= 0) {
+            throw new MediaProcessingException("Invalid segment length: " + ladder.segmentSeconds());
+        }
+        if (ladder.renditions() == null || ladder.renditions().isEmpty()) {
+            throw new MediaProcessingException("ABR ladder needs at least one rendition");
+        }
+
+        Set<String> names = new HashSet<>();
+        for (RenditionDto rendition : ladder.renditions()) {
+            if (rendition == null || rendition.name() == null
+                    || !RENDITION_NAME.matcher(rendition.name()).matches()) {
+                throw new MediaProcessingException("Invalid rendition name, expected 1-32 of [A-Za-z0-9_-]: "
+                        + (rendition == null ? null : rendition.name()));
+            }
+            if (!names.add(rendition.name())) {
+                throw new MediaProcessingException("Duplicate rendition name: " + rendition.name());
+            }
+            // libx264 with 4:2:0 chroma needs even dimensions
+            if (rendition.height() <= 0 || rendition.height() % 2 != 0) {
+                throw new MediaProcessingException("Rendition " + rendition.name()
+                        + " needs a positive even height, got " + rendition.height());
+            }
+            if (rendition.videoBitrate() == null || !BITRATE.matcher(rendition.videoBitrate()).matches()
+                    || rendition.audioBitrate() == null || !BITRATE.matcher(rendition.audioBitrate()).matches()) {
+                throw new MediaProcessingException("Rendition " + rendition.name()
+                        + " needs video and audio bitrates like 3000k, got " + rendition.videoBitrate() + "/"
+                        + rendition.audioBitrate());
+            }
+        }
+    }
+
+    // ===================== COMMAND BUILDER =====================
+
+    private List<String> buildLadderCommand(String url, AbrLadderDto ladder, int segmentSeconds, boolean hasAudio,
+            Path outputDir) {
+
+        List<RenditionDto> renditions = ladder.renditions();
+        int n = renditions.size();
+
+        List<String> command = new ArrayList<>(List.of(ffmpegExePath, "-nostdin", "-y", "-v", "error",
+                "-nostats", "-progress", "pipe:1", "-i", url));
+
+        // decode once, split into one scaler per rendition
+        StringBuilder graph = new StringBuilder("[0:v]split=").append(n);
+        for (int i = 0; i < n; i++) {
+            graph.append("[s").append(i).append(']');
+        }
+        for (int i = 0; i < n; i++) {
+            graph.append(";[s").append(i).append("]scale=-2:").append(renditions.get(i).height())
+                    .append("[v").append(i).append(']');
+        }
+        command.addAll(List.of("-filter_complex", graph.toString()));
+
+        for (int i = 0; i < n; i++) {
+            command.addAll(List.of(
+                    "-map", "[v" + i + "]",
+                    "-c:v:" + i, "libx264",
+                    "-b:v:" + i, renditions.get(i).videoBitrate()));
+        }
+        // keyframes on segment boundaries so every rendition switches cleanly
+        command.addAll(List.of(
+                "-preset", preset,
+                "-sc_threshold", "0",
+                "-force_key_frames", "expr:gte(t,n_forced*" + segmentSeconds + ")"));
+
+        if (ladder.format() == StreamingFormat.DASH) {
+            if (hasAudio) {
+                // one audio representation shared by every video representation
+                command.addAll(List.of("-map", "0:a:0", "-c:a", "aac", "-b:a", renditions.get(0).audioBitrate()));
+            }
+            command.addAll(List.of(
+                    "-f", "dash",
+                    "-seg_duration", String.valueOf(segmentSeconds),
+                    "-use_template", "1",
+                    "-use_timeline", "1",
+                    "-adaptation_sets", hasAudio ? "id=0,streams=v id=1,streams=a" : "id=0,streams=v",
+                    "-init_seg_name", "init-$RepresentationID$.m4s",
+                    "-media_seg_name", "chunk-$RepresentationID$-$Number%05d$.m4s",
+                    outputDir.resolve("manifest.mpd").toString()));
+            return command;
+        }
+
+        StringBuilder streamMap = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            if (hasAudio) {
+                command.addAll(List.of(
+                        "-map", "0:a:0",
+                        "-c:a:" + i, "aac",
+                        "-b:a:" + i, renditions.get(i).audioBitrate()));
+            }
+            streamMap.append(i == 0 ? "" : " ").append("v:").append(i);
+            if (hasAudio) {
+                streamMap.append(",a:").append(i);
+            }
+            streamMap.append(",name:").append(renditions.get(i).name());
+        }
+        command.addAll(List.of(
+                "-f", "hls",
+                "-hls_time", String.valueOf(segmentSeconds),
+                "-hls_playlist_type", "vod",
+                "-hls_flags", "independent_segments",
+                "-hls_segment_filename", outputDir.resolve("%v").resolve("segment_%05d.ts").toString(),
+                "-master_pl_name", "master.m3u8",
+                "-var_stream_map", streamMap.toString(),
+                outputDir.resolve("%v").resolve("index.m3u8").toString()));
+        return command;
+    }
+
+    // ===================== INCREMENTAL UPLOAD =====================
+
+    private final class SegmentUploader {
+
+        private final AbrLadderDto ladder;
+        private final Path outputDir;
+        private final int segmentsExpected;
+        private final boolean hasAudio;
+
+        private final Set<Path> uploaded = ConcurrentHashMap.newKeySet();
+        private final Map<String, Integer> uploadedPerRendition = new ConcurrentHashMap<>();
+        private final AtomicLong uploadedBytes = new AtomicLong();
+
+        SegmentUploader(AbrLadderDto ladder, Path outputDir, int segmentsExpected, boolean hasAudio) {
+            this.ladder = ladder;
+            this.outputDir = outputDir;
+            this.segmentsExpected = Math.max(segmentsExpected, 1);
+            this.hasAudio = hasAudio;
+        }
+
+        long uploadedBytes() {
+            return uploadedBytes.get();
+        }
+
+        // synchronized: the scheduled sweep and the final sweep must not overlap
+        synchronized void uploadSettled(boolean finished) {
+            try (Stream<Path> files = Files.walk(outputDir)) {
+                Map<String, List<Path>> segmentsByRendition = new ConcurrentHashMap<>();
+                List<Path> others = new ArrayList<>();
+
+                files.filter(Files::isRegularFile).forEach(file -> {
+                    String rendition = renditionOf(file);
+                    if (rendition == null) {
+                        others.add(file);
+                    } else {
+                        segmentsByRendition.computeIfAbsent(rendition, r -> new ArrayList<>()).add(file);
+                    }
+                });
+
+                segmentsByRendition.forEach((rendition, segments) -> {
+                    segments.sort(Comparator.comparing(Path::toString));
+                    // the newest segment may still be written to
+                    int settled = finished ? segments.size() : segments.size() - 1;
+                    int before = uploadedPerRendition.getOrDefault(rendition, 0);
+                    for (Path segment : segments.subList(0, Math.max(settled, 0))) {
+                        if (upload(segment)) {
+                            uploadedPerRendition.merge(rendition, 1, Integer::sum);
+                        }
+                    }
+                    int after = uploadedPerRendition.getOrDefault(rendition, 0);
+                    if (after != before) {
+                        publishRenditionProgress(rendition, after, finished && uploaded.containsAll(segments));
+                    }
+                });
+
+                // playlists, manifest and init segments are only final once ffmpeg exits
+                if (finished) {
+                    others.forEach(this::upload);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to scan ABR output directory. processId={}, errorMessage={}", ladder.id(),
+                        e.getMessage());
+            }
+        }
+
+        // the final sweep has no later sweep to pick up failed uploads, so
+        // retry it a few times and fail the job rather than leave a ladder
+        // with holes in it
+        void uploadRemaining() throws IOException, InterruptedException {
+            for (int attempt = 1;; attempt++) {
+                uploadSettled(true);
+                List<Path> missing;
+                try (Stream<Path> files = Files.walk(outputDir)) {
+                    missing = files.filter(Files::isRegularFile).filter(file -> !uploaded.contains(file)).toList();
+                }
+                if (missing.isEmpty()) {
+                    return;
+                }
+                if (attempt >= finalUploadAttempts) {
+                    throw new MediaProcessingException("Failed to upload " + missing.size()
+                            + " ABR output files, first=" + outputDir.relativize(missing.get(0)));
+                }
+                log.warn("{} ABR output files not uploaded, retrying. processId={}, attempt={}", missing.size(),
+                        ladder.id(), attempt);
+                TimeUnit.SECONDS.sleep(attempt);
+            }
+        }
+
+        private String renditionOf(Path file) {
+            String name = file.getFileName().toString();
+            if (HLS_SEGMENT.matcher(name).matches()) {
+                return file.getParent().getFileName().toString();
+            }
+            Matcher dash = DASH_SEGMENT.matcher(name);
+            if (dash.matches()) {
+                // DASH representation ids follow -map order: videos first, then audio
+                int representation = Integer.parseInt(dash.group(1));
+                List<RenditionDto> renditions = ladder.renditions();
+                return representation < renditions.size() ? renditions.get(representation).name()
+                        : hasAudio ? "audio" : String.valueOf(representation);
+            }
+            return null;
+        }
+
+        // true if the file was uploaded by this call
+        private boolean upload(Path file) {
+            if (uploaded.contains(file)) {
+                return false;
+            }
+            String key = ladder.storageOutputPrefix() + "/" + outputDir.relativize(file).toString()
+                    .replace('\\', '/');
+            try {
+                long size = Files.size(file);
+                s3Client.putObject(
+                        PutObjectRequest.builder().bucket(downloadsBucket).key(key).build(),
+                        RequestBody.fromFile(file));
+                uploadedBytes.addAndGet(size);
+                uploaded.add(file);
+                return true;
+            } catch (Exception e) {
+                // picked up again by the next sweep, or retried by uploadRemaining
+                log.warn("Failed to upload ABR output. key={}, errorMessage={}", key, e.getMessage());
+                return false;
+            }
+        }
+
+        private void publishRenditionProgress(String rendition, int segmentsUploaded, boolean finished) {
+            int progress = finished ? 100 : Math.min(segmentsUploaded * 100 / segmentsExpected, 99);
+            progressProducer.publishRenditionProgress(new RenditionProgress(
+                    ladder.id().toString(),
+                    rendition,
+                    progress,
+                    segmentsUploaded,
+                    segmentsExpected,
+                    finished ? ProcessStatus.COMPLETED : ProcessStatus.PROCESSING,
+                    nodeId));
+        }
+    }
+
+    private void deleteTempDirectory(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("Failed to delete temp file: {}", path);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to delete temp directory: {}", dir);
+        }
+    }
+}
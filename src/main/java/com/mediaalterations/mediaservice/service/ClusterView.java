@@ -0,0 +1,68 @@
+package com.mediaalterations.mediaservice.service;
+
+import com.mediaalterations.mediaservice.dto.NodeHeartbeat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * This instance's picture of the media-service cluster, built from the
+ * heartbeats every node publishes on the cluster exchange (our own included).
+ * Nodes that stop sending heartbeats drop out after node-expiry-seconds.
+ */
+@Component
+@Slf4j
+public class ClusterView {
+
+    private final ConcurrentHashMap<String, NodeHeartbeat> nodes = new ConcurrentHashMap<>();
+
+    @Value("${media.cluster.node-expiry-seconds:20}")
+    private long nodeExpirySeconds;
+
+    public ClusterView(MeterRegistry meterRegistry) {
+        meterRegistry.gauge("media.cluster.nodes", this, view -> view.liveNodes().size());
+        meterRegistry.gauge("media.cluster.free.slots", this,
+                view -> view.liveNodes().stream().mapToInt(NodeHeartbeat::freeSlots).sum());
+    }
+
+    public void update(NodeHeartbeat heartbeat) {
+        NodeHeartbeat previous = nodes.put(heartbeat.nodeId(), heartbeat);
+        if (previous == null) {
+            log.info("Node joined the cluster view. nodeId={}, maxSlots={}", heartbeat.nodeId(),
+                    heartbeat.maxSlots());
+        }
+        evictExpired();
+    }
+
+    public Collection<NodeHeartbeat> liveNodes() {
+        evictExpired();
+        return List.copyOf(nodes.values());
+    }
+
+    public Optional<String> ownerOf(String processId) {
+        return liveNodes().stream()
+                .filter(node -> node.runningJobs().contains(processId))
+                .map(NodeHeartbeat::nodeId)
+                .findFirst();
+    }
+
+    private void evictExpired() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(nodeExpirySeconds);
+        nodes.values().removeIf(node -> {
+            if (node.timestamp() < cutoff) {
+                log.warn("Node left the cluster view, no heartbeat since {}. nodeId={}", node.timestamp(),
+                        node.nodeId());
+                return true;
+            }
+            return false;
+        });
+    }
+}
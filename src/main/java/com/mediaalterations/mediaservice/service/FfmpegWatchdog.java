@@ -0,0 +1,184 @@
+package com.mediaalterations.mediaservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Keeps an eye on every running ffmpeg process.
+ *
+ * A job is stalled when out_time has not advanced for stall-timeout seconds,
+ * and timed out when it runs past a deadline derived from the expected output
+ * duration and the realtime factor ffmpeg has been reporting. An output that
+ * runs past the estimate stretches the deadline, but only up to
+ * max-output-factor times the estimate, and no job outlives max-runtime.
+ * Either way the process gets a SIGTERM first (so ffmpeg can finalize) and is
+ * destroyed forcibly if it is still alive after the kill grace period.
+ */
+@Component
+@Slf4j
+public class FfmpegWatchdog {
+
+    public enum Verdict {
+        STALLED, TIMED_OUT
+    }
+
+    private static final class Job {
+        final Process process;
+        final long expectedDurationMs;
+        final long startedAt;
+
+        volatile long lastOutTimeMs;
+        volatile long lastAdvanceAt;
+        // exponentially weighted realtime factor, 0 until ffmpeg reports one
+        volatile double speed;
+
+        volatile Verdict verdict;
+        volatile long terminatedAt;
+
+        Job(Process process, long expectedDurationMs, long now) {
+            this.process = process;
+            this.expectedDurationMs = expectedDurationMs;
+            this.startedAt = now;
+            this.lastAdvanceAt = now;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Job> jobs = new ConcurrentHashMap<>();
+
+    private final Counter stallCounter;
+    private final Counter timeoutCounter;
+    private final Counter forcedKillCounter;
+
+    @Value("${ffmpeg.watchdog.stall-timeout-seconds:120}")
+    private long stallTimeoutSeconds;
+
+    @Value("${ffmpeg.watchdog.min-timeout-minutes:10}")
+    private long minTimeoutMinutes;
+
+    @Value("${ffmpeg.watchdog.timeout-factor:3.0}")
+    private double timeoutFactor;
+
+    // assumed realtime factor until ffmpeg reports a real one
+    @Value("${ffmpeg.watchdog.min-speed:0.25}")
+    private double minSpeed;
+
+    @Value("${ffmpeg.watchdog.kill-grace-seconds:15}")
+    private long killGraceSeconds;
+
+    // how far past the estimate the output may grow before the deadline stops stretching
+    @Value("${ffmpeg.watchdog.max-output-factor:2.0}")
+    private double maxOutputFactor;
+
+    // hard ceiling for any job, including ones without an estimate
+    @Value("${ffmpeg.watchdog.max-runtime-minutes:360}")
+    private long maxRuntimeMinutes;
+
+    public FfmpegWatchdog(MeterRegistry meterRegistry) {
+        this.stallCounter = Counter.builder("ffmpeg.watchdog.stalls")
+                .description("FFmpeg processes terminated because out_time stopped advancing")
+                .register(meterRegistry);
+        this.timeoutCounter = Counter.builder("ffmpeg.watchdog.timeouts")
+                .description("FFmpeg processes terminated for running past their adaptive deadline")
+                .register(meterRegistry);
+        this.forcedKillCounter = Counter.builder("ffmpeg.watchdog.forced.kills")
+                .description("FFmpeg processes that ignored SIGTERM and had to be destroyed forcibly")
+                .register(meterRegistry);
+        meterRegistry.gauge("ffmpeg.watchdog.active.jobs", jobs, ConcurrentHashMap::size);
+    }
+
+    public void register(String processId, Process process, long expectedDurationMs) {
+        jobs.put(processId, new Job(process, expectedDurationMs, System.currentTimeMillis()));
+    }
+
+    public void heartbeat(String processId, long outTimeMs, double speed) {
+        Job job = jobs.get(processId);
+        if (job == null) {
+            return;
+        }
+        if (outTimeMs > job.lastOutTimeMs) {
+            job.lastOutTimeMs = outTimeMs;
+            job.lastAdvanceAt = System.currentTimeMillis();
+        }
+        if (speed > 0) {
+            job.speed = job.speed == 0 ? speed : 0.8 * job.speed + 0.2 * speed;
+        }
+    }
+
+    /**
+     * Stops watching the job.
+     *
+     * @return why the watchdog terminated the process, or null if it didn't
+     */
+    public Verdict unregister(String processId) {
+        Job job = jobs.remove(processId);
+        return job == null ? null : job.verdict;
+    }
+
+    @Scheduled(fixedDelayString = "${ffmpeg.watchdog.check-interval-seconds:5}", timeUnit = TimeUnit.SECONDS)
+    public void check() {
+        check(System.currentTimeMillis());
+    }
+
+    void check(long now) {
+        jobs.forEach((processId, job) -> {
+            if (!job.process.isAlive()) {
+                return;
+            }
+
+            if (job.verdict != null) {
+                if (now - job.terminatedAt > TimeUnit.SECONDS.toMillis(killGraceSeconds)) {
+                    log.warn("FFmpeg ignored SIGTERM, destroying forcibly. processId={}", processId);
+                    job.process.destroyForcibly();
+                    forcedKillCounter.increment();
+                }
+                return;
+            }
+
+            long sinceAdvance = now - job.lastAdvanceAt;
+            if (sinceAdvance > TimeUnit.SECONDS.toMillis(stallTimeoutSeconds)) {
+                log.warn("FFmpeg stalled, no out_time advance for {} ms at {} ms. processId={}",
+                        sinceAdvance, job.lastOutTimeMs, processId);
+                terminate(job, Verdict.STALLED, now);
+                stallCounter.increment();
+                return;
+            }
+
+            long deadlineMs = deadlineMs(job);
+            if (now - job.startedAt > deadlineMs) {
+                log.warn("FFmpeg exceeded its deadline of {} ms (expected={} ms, speed={}x). processId={}",
+                        deadlineMs, job.expectedDurationMs, job.speed, processId);
+                terminate(job, Verdict.TIMED_OUT, now);
+                timeoutCounter.increment();
+            }
+        });
+    }
+
+    private long deadlineMs(Job job) {
+        long minTimeoutMs = TimeUnit.MINUTES.toMillis(minTimeoutMinutes);
+        long maxRuntimeMs = TimeUnit.MINUTES.toMillis(maxRuntimeMinutes);
+        if (job.expectedDurationMs <= 0) {
+            // nothing to scale by, only the stall check and the ceiling apply
+            return maxRuntimeMs;
+        }
+        // an underestimated output that keeps advancing gets more time, a
+        // runaway one (looped input without -shortest) does not get it forever
+        double outputMs = Math.min(Math.max(job.expectedDurationMs, job.lastOutTimeMs),
+                job.expectedDurationMs * maxOutputFactor);
+        double speed = Math.max(job.speed, minSpeed);
+        long deadlineMs = Math.max(minTimeoutMs, (long) (outputMs / speed * timeoutFactor));
+        return Math.min(deadlineMs, maxRuntimeMs);
+    }
+
+    private void terminate(Job job, Verdict verdict, long now) {
+        job.verdict = verdict;
+        job.terminatedAt = now;
+        job.process.destroy();
+    }
+}
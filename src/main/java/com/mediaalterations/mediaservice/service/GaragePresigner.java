@@ -0,0 +1,69 @@
+package com.mediaalterations.mediaservice.service;
+
+import com.mediaalterations.mediaservice.exception.MediaProcessingException;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+
+import java.time.Duration;
+import java.util.List;
+
+/*
+ * Hands ffmpeg/ffprobe a presigned url instead of a downloaded temp file, so
+ * they only fetch the byte ranges they actually seek to.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class GaragePresigner {
+
+    private final S3Client s3Client;
+    private final S3Presigner s3Presigner;
+
+    @Value("${garage.bucket.uploads}")
+    private String uploadsBucket;
+
+    @Value("${garage.bucket.downloads}")
+    private String downloadsBucket;
+
+    @Value("${garage.presign-minutes:30}")
+    private long presignMinutes;
+
+    public String presignedGetUrl(String key) {
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(locate(key))
+                .key(key)
+                .build();
+
+        return s3Presigner.presignGetObject(GetObjectPresignRequest.builder()
+                .signatureDuration(Duration.ofMinutes(presignMinutes))
+                .getObjectRequest(request)
+                .build())
+                .url()
+                .toString();
+    }
+
+    // same lookup order as downloadFromGarage: uploads first, then processed files
+    private String locate(String key) {
+        for (String bucket : List.of(uploadsBucket, downloadsBucket)) {
+            try {
+                s3Client.headObject(HeadObjectRequest.builder().bucket(bucket).key(key).build());
+                return bucket;
+            } catch (S3Exception e) {
+                if (e.statusCode() != 404) {
+                    throw e;
+                }
+                log.debug("Object not found in bucket: {}, key={}", bucket, key);
+            }
+        }
+        throw new MediaProcessingException("Object not found in Garage: " + key);
+    }
+}
@@ -0,0 +1,264 @@
+package com.mediaalterations.mediaservice.service;
+
+import com.mediaalterations.mediaservice.dto.ProcessDto;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import tools.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Remembers which Garage object a given piece of work produced, so an
+ * identical request can be answered with a server-side copy instead of
+ * another ffmpeg run.
+ *
+ * A job is identified by its normalized command with the output path blanked
+ * out and every input path swapped for the input object's ETag. The index
+ * itself lives in Garage as one small JSON object per fingerprint, so it is
+ * shared by every instance. Identical jobs arriving on this instance while
+ * one of them is still running wait for that one instead of encoding again.
+ * An entry is only reused while the output object still has the ETag it had
+ * when the job finished.
+ */
+@Component
+@Slf4j
+public class JobResultIndex {
+
+    // eTag pins the exact object that was produced, the key itself belongs to
+    // the user and may be overwritten or replaced later
+    public record CachedResult(String bucket, String key, String eTag, String finalFileSize, String duration) {
+    }
+
+    /*
+     * Outcome of awaitOrClaim: either a reusable result, or nothing to reuse.
+     * Only the job that owns the claim may complete or abandon it, everyone
+     * else's complete/abandon leaves the in-flight entry alone.
+     */
+    public static final class Claim {
+        private final String fingerprint;
+        private final CachedResult cached;
+        private final CompletableFuture<CachedResult> owned;
+
+        private Claim(String fingerprint, CachedResult cached, CompletableFuture<CachedResult> owned) {
+            this.fingerprint = fingerprint;
+            this.cached = cached;
+            this.owned = owned;
+        }
+
+        public String fingerprint() {
+            return fingerprint;
+        }
+
+        public Optional<CachedResult> cached() {
+            return Optional.ofNullable(cached);
+        }
+
+        // true if identical jobs on this instance are waiting for this one
+        public boolean isOwner() {
+            return owned != null;
+        }
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final S3Client s3Client;
+
+    private final ConcurrentHashMap<String, CompletableFuture<CachedResult>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter coalescedCounter;
+
+    @Value("${media.dedup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${media.dedup.index-prefix:.dedup-index/}")
+    private String indexPrefix;
+
+    @Value("${media.dedup.max-wait-minutes:60}")
+    private long maxWaitMinutes;
+
+    @Value("${garage.bucket.uploads}")
+    private String uploadsBucket;
+
+    @Value("${garage.bucket.downloads}")
+    private String downloadsBucket;
+
+    public JobResultIndex(S3Client s3Client, MeterRegistry meterRegistry) {
+        this.s3Client = s3Client;
+        this.hitCounter = Counter.builder("media.dedup.hits")
+                .description("Jobs answered by copying a previously produced output")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("media.dedup.misses")
+                .description("Jobs with no previously produced output")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("media.dedup.coalesced")
+                .description("Jobs that waited for an identical job already running on this instance")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the job fingerprint, or null if deduplication is disabled or the
+     *         inputs could not be resolved
+     */
+    public String fingerprint(ProcessDto processDto) {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            String command = processDto.command();
+            for (String storagePath : processDto.storageInputDetails().values()) {
+                command = command.replace(storagePath, "{input:" + eTag(storagePath) + "}");
+            }
+            String output = processDto.storageOutputPath();
+            command = command.replace(output, "{output}" + output.substring(output.lastIndexOf('.')));
+            String normalized = String.join(" ", command.trim().split("\\s+"));
+
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (Exception e) {
+            log.warn("Could not fingerprint job, processing without deduplication. processId={}, errorMessage={}",
+                    processDto.id(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns a previously produced result for the fingerprint, waiting for an
+     * identical job already running here if there is one. Without a result
+     * the caller produces the output itself and must pass the claim to
+     * {@link #complete} or {@link #abandon} once done.
+     */
+    public Claim awaitOrClaim(String fingerprint) {
+        while (true) {
+            CompletableFuture<CachedResult> claim = new CompletableFuture<>();
+            CompletableFuture<CachedResult> running = inFlight.putIfAbsent(fingerprint, claim);
+
+            if (running != null) {
+                coalescedCounter.increment();
+                log.info("Identical job already running, waiting for it. fingerprint={}", fingerprint);
+                CachedResult result;
+                try {
+                    result = running.get(maxWaitMinutes, TimeUnit.MINUTES);
+                } catch (Exception e) {
+                    // runs ffmpeg too, but the other job keeps the claim
+                    log.warn("Gave up waiting for identical job. fingerprint={}", fingerprint);
+                    return new Claim(fingerprint, null, null);
+                }
+                if (result != null) {
+                    hitCounter.increment();
+                    return new Claim(fingerprint, result, null);
+                }
+                // the other job failed, try to run it ourselves
+                continue;
+            }
+
+            Optional<CachedResult> indexed = lookup(fingerprint);
+            if (indexed.isPresent()) {
+                inFlight.remove(fingerprint, claim);
+                claim.complete(indexed.get());
+                hitCounter.increment();
+                return new Claim(fingerprint, indexed.get(), null);
+            }
+            missCounter.increment();
+            return new Claim(fingerprint, null, claim);
+        }
+    }
+
+    public void complete(Claim claim, CachedResult result) {
+        try {
+            s3Client.putObject(
+                    PutObjectRequest.builder().bucket(downloadsBucket).key(indexPrefix + claim.fingerprint).build(),
+                    RequestBody.fromBytes(MAPPER.writeValueAsBytes(result)));
+        } catch (Exception e) {
+            log.warn("Failed to record job result in dedup index. fingerprint={}, errorMessage={}",
+                    claim.fingerprint, e.getMessage());
+        }
+        release(claim, result);
+    }
+
+    // no-op once complete() has run for the claim, or if the caller never owned it
+    public void abandon(Claim claim) {
+        release(claim, null);
+    }
+
+    private void release(Claim claim, CachedResult result) {
+        if (claim.owned != null) {
+            inFlight.remove(claim.fingerprint, claim.owned);
+            claim.owned.complete(result);
+        }
+    }
+
+    public void copyTo(CachedResult result, String bucket, String key) {
+        log.info("Reusing previous output. source={}/{}, destination={}/{}", result.bucket(), result.key(), bucket,
+                key);
+        s3Client.copyObject(CopyObjectRequest.builder()
+                .sourceBucket(result.bucket())
+                .sourceKey(result.key())
+                .destinationBucket(bucket)
+                .destinationKey(key)
+                .copySourceIfMatch(result.eTag())
+                .build());
+    }
+
+    private Optional<CachedResult> lookup(String fingerprint) {
+        try {
+            byte[] entry = s3Client.getObjectAsBytes(
+                    GetObjectRequest.builder().bucket(downloadsBucket).key(indexPrefix + fingerprint).build())
+                    .asByteArray();
+            CachedResult result = MAPPER.readValue(entry, CachedResult.class);
+
+            // the previous output may have been deleted or overwritten since
+            String eTag = s3Client.headObject(
+                    HeadObjectRequest.builder().bucket(result.bucket()).key(result.key()).build()).eTag();
+            if (result.eTag() == null || !result.eTag().equals(eTag)) {
+                log.info("Previous output changed since it was indexed, ignoring it. fingerprint={}, key={}",
+                        fingerprint, result.key());
+                return Optional.empty();
+            }
+            return Optional.of(result);
+        } catch (S3Exception e) {
+            if (e.statusCode() != 404) {
+                log.warn("Dedup index lookup failed. fingerprint={}, errorMessage={}", fingerprint, e.getMessage());
+            }
+            return Optional.empty();
+        } catch (Exception e) {
+            log.warn("Dedup index lookup failed. fingerprint={}, errorMessage={}", fingerprint, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // same lookup order as downloadFromGarage: uploads first, then processed files
+    private String eTag(String key) {
+        for (String bucket : List.of(uploadsBucket, downloadsBucket)) {
+            try {
+                return s3Client.headObject(HeadObjectRequest.builder().bucket(bucket).key(key).build()).eTag();
+            } catch (S3Exception e) {
+                if (e.statusCode() != 404) {
+                    throw e;
+                }
+                log.debug("Input not found in bucket: {}, key={}", bucket, key);
+            }
+        }
+        throw new IllegalStateException("Input object not found: " + key);
+    }
+}
@@ -0,0 +1,163 @@
+package com.mediaalterations.mediaservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/*
+ * Caps how many jobs run on this node at once. A job holds its slot from the
+ * moment its message is taken until it is done, download included.
+ *
+ * Full encodes (process, batch, ABR) share media.node.max-slots, previews
+ * have their own media.node.preview-slots so they never queue behind an
+ * encode. When a pool is full, the listener containers feeding it are
+ * stopped, so the node stops taking messages and queued jobs stay in the
+ * broker for idle nodes. A message that still slips in during the pause is
+ * requeued, not held. The containers start again once a slot frees up.
+ *
+ * The slots also tell which jobs this node has taken, so a kill for a job
+ * that is still downloading can be honoured before ffmpeg starts.
+ */
+@Component
+@Slf4j
+public class JobSlots {
+
+    public enum Pool {
+        ENCODE, PREVIEW
+    }
+
+    // @RabbitListener ids of the containers feeding each pool
+    public static final String PROCESS_LISTENER = "media.process.listener";
+    public static final String BATCH_LISTENER = "media.batch.listener";
+    public static final String ABR_LISTENER = "media.abr.listener";
+    public static final String PREVIEW_LISTENER = "media.preview.listener";
+
+    private static final Map<Pool, List<String>> LISTENERS = Map.of(
+            Pool.ENCODE, List.of(PROCESS_LISTENER, BATCH_LISTENER, ABR_LISTENER),
+            Pool.PREVIEW, List.of(PREVIEW_LISTENER));
+
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+
+    private final Map<Pool, Integer> maxSlots = new EnumMap<>(Pool.class);
+    private final Map<Pool, Semaphore> slots = new EnumMap<>(Pool.class);
+
+    // containers whose stop() has not called back yet, must not be restarted
+    private final Set<String> stopping = ConcurrentHashMap.newKeySet();
+
+    // process ids holding a slot here, and those killed before ffmpeg started
+    private final Set<String> admitted = ConcurrentHashMap.newKeySet();
+    private final Set<String> cancelled = ConcurrentHashMap.newKeySet();
+
+    // jobs finishing during shutdown must not restart the containers
+    private volatile boolean shuttingDown;
+
+    public JobSlots(@Value("${media.node.max-slots:4}") int encodeSlots,
+            @Value("${media.node.preview-slots:2}") int previewSlots,
+            RabbitListenerEndpointRegistry listenerRegistry,
+            MeterRegistry meterRegistry) {
+        this.listenerRegistry = listenerRegistry;
+        maxSlots.put(Pool.ENCODE, encodeSlots);
+        maxSlots.put(Pool.PREVIEW, previewSlots);
+        slots.put(Pool.ENCODE, new Semaphore(encodeSlots));
+        slots.put(Pool.PREVIEW, new Semaphore(previewSlots));
+        meterRegistry.gauge("media.node.free.slots", slots.get(Pool.ENCODE), Semaphore::availablePermits);
+        meterRegistry.gauge("media.node.free.preview.slots", slots.get(Pool.PREVIEW), Semaphore::availablePermits);
+    }
+
+    /**
+     * @return false if the pool is full, the caller should hand the message
+     *         back to the broker
+     */
+    public synchronized boolean tryAcquire(Pool pool, String processId) {
+        if (!slots.get(pool).tryAcquire()) {
+            log.info("No free {} slot, requeueing. processId={}", pool, processId);
+            return false;
+        }
+        admitted.add(processId);
+        if (slots.get(pool).availablePermits() == 0) {
+            pause(pool);
+        }
+        return true;
+    }
+
+    public synchronized void release(Pool pool, String processId) {
+        admitted.remove(processId);
+        cancelled.remove(processId);
+        slots.get(pool).release();
+        resume(pool);
+    }
+
+    /**
+     * Marks a job this node has taken as cancelled, ffmpeg will refuse to
+     * start for it.
+     *
+     * @return false if the job is not on this node
+     */
+    public boolean cancel(String processId) {
+        if (!admitted.contains(processId)) {
+            return false;
+        }
+        cancelled.add(processId);
+        return true;
+    }
+
+    public boolean isCancelled(String processId) {
+        return cancelled.contains(processId);
+    }
+
+    public int maxSlots(Pool pool) {
+        return maxSlots.get(pool);
+    }
+
+    public int freeSlots(Pool pool) {
+        return slots.get(pool).availablePermits();
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void onShutdown() {
+        shuttingDown = true;
+    }
+
+    private void pause(Pool pool) {
+        for (String id : LISTENERS.get(pool)) {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(id);
+            if (container == null || !container.isRunning() || !stopping.add(id)) {
+                continue;
+            }
+            log.info("All {} slots busy, pausing listener {}", pool, id);
+            // asynchronous: the job that filled the last slot may run on this container
+            container.stop(() -> {
+                stopping.remove(id);
+                synchronized (this) {
+                    resume(pool);
+                }
+            });
+        }
+    }
+
+    private void resume(Pool pool) {
+        if (shuttingDown || slots.get(pool).availablePermits() == 0) {
+            return;
+        }
+        for (String id : LISTENERS.get(pool)) {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(id);
+            if (container == null || container.isRunning() || stopping.contains(id)) {
+                continue;
+            }
+            log.info("{} slot free, resuming listener {}", pool, id);
+            container.start();
+        }
+    }
+}
@@ -1,10 +1,30 @@
 package com.mediaalterations.mediaservice.service;
 
+import com.mediaalterations.mediaservice.dto.BatchJobDto;
+import com.mediaalterations.mediaservice.dto.FfmpegCmdResponse;
 import com.mediaalterations.mediaservice.dto.ProcessDto;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
 public interface MediaService {
     void workOnProcess(ProcessDto process) throws Exception;
 
+    void workOnBatch(BatchJobDto batch);
+
     String killProcess(String processId);
+
+    // kill for a job taken by this node whose ffmpeg hasn't started yet, false if it isn't here
+    boolean cancelPending(String processId);
+
+    Set<String> getActiveProcessIds();
+
+    boolean executeWithProgress(List<String> command, Consumer<FfmpegCmdResponse> progressCallback,
+            long totalDurationMs, String processId);
+
+    String probe(String inputPath);
+
+    Double probeAndParse(String inputPath);
 }
@@ -1,5 +1,7 @@
 package com.mediaalterations.mediaservice.service;
 
+import com.mediaalterations.mediaservice.dto.BatchJobDto;
+import com.mediaalterations.mediaservice.dto.BatchStepDto;
 import com.mediaalterations.mediaservice.dto.FfmpegCmdResponse;
 import com.mediaalterations.mediaservice.dto.ProcessDto;
 import com.mediaalterations.mediaservice.dto.ProcessStatus;
@@ -9,7 +11,8 @@ import com.mediaalterations.mediaservice.feignClients.MainClient;
 import com.mediaalterations.mediaservice.feignClients.StorageClient;
 import com.mediaalterations.mediaservice.messaging.RabbitMQProducer;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
@@ -30,14 +33,23 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.concurrent.*;
 
-@RequiredArgsConstructor
 @Slf4j
 @Service
 public class MediaServiceImpl implements MediaService {
@@ -56,14 +68,51 @@ public class MediaServiceImpl implements MediaService {
     @Value("${garage.bucket.downloads}")
     private String downloadsBucket;
 
+    @Value("${media.node.id}")
+    private String nodeId;
+
+    @Value("${ffmpeg.log.tail-lines:200}")
+    private int outputTailLines;
+
+    @Value("${media.logging.progress-interval-seconds:10}")
+    private long progressLogIntervalSeconds;
+
     private final RabbitMQProducer progressProducer;
     private final MainClient mainClient;
     private final StorageClient storageClient;
+    private final OutputDurationEstimator outputDurationEstimator;
+    private final FfmpegWatchdog watchdog;
+    private final JobSlots jobSlots;
+    private final JobResultIndex jobResultIndex;
+    private final Counter progressSampledOutCounter;
 
     private final S3Client s3Client;
 
     private static final ObjectMapper MAPPER = new ObjectMapper();
 
+    // key=value lines written by -progress, e.g. "bitrate=1520.3kbits/s"
+    private static final Pattern PROGRESS_LINE = Pattern.compile("^[a-z0-9_]+=\\S*$");
+
+    // the \r-terminated status line ffmpeg prints unless run with -nostats,
+    // e.g. "frame=  120 fps= 30 q=28.0 size=    1024kB time=00:00:04.00 bitrate=..."
+    private static final Pattern STATS_LINE = Pattern.compile("^(frame|size)=.*\\btime=");
+
+    public MediaServiceImpl(RabbitMQProducer progressProducer, MainClient mainClient, StorageClient storageClient,
+            OutputDurationEstimator outputDurationEstimator, FfmpegWatchdog watchdog, JobSlots jobSlots,
+            JobResultIndex jobResultIndex, MeterRegistry meterRegistry, S3Client s3Client) {
+        this.progressProducer = progressProducer;
+        this.mainClient = mainClient;
+        this.storageClient = storageClient;
+        this.outputDurationEstimator = outputDurationEstimator;
+        this.watchdog = watchdog;
+        this.jobSlots = jobSlots;
+        this.jobResultIndex = jobResultIndex;
+        this.s3Client = s3Client;
+        this.progressSampledOutCounter = Counter.builder("logging.progress.sampled.out")
+                .description("Progress updates published without a log line because of log sampling")
+                .register(meterRegistry);
+    }
+
     // ===================== MAIN PROCESS =====================
 
     @Override
@@ -73,13 +122,23 @@ public class MediaServiceImpl implements MediaService {
                 processDto.id());
 
         FfmpegCmdResponse ffmpegCmdRes = new FfmpegCmdResponse(-1L, processDto.id().toString(), 0, "00:00:00:00.0000",
-                "0 KB", ProcessStatus.WAITING);
+                "0 KB", ProcessStatus.WAITING, 0, 0, -1, nodeId);
 
         ArrayList<Path> tempInputs = new ArrayList<>();
         Path tempOutput = null;
+        JobResultIndex.Claim claim = null;
 
         try {
 
+            String fingerprint = jobResultIndex.fingerprint(processDto);
+            if (fingerprint != null) {
+                claim = jobResultIndex.awaitOrClaim(fingerprint);
+                Optional<JobResultIndex.CachedResult> cached = claim.cached();
+                if (cached.isPresent() && reuseCachedResult(processDto, cached.get(), ffmpegCmdRes)) {
+                    return;
+                }
+            }
+
             tempOutput = Files.createTempFile("output-", processDto.fileName().substring(
                     processDto.fileName().lastIndexOf('.')));
             log.info("Temporary Output Path: {}", tempOutput);
@@ -105,26 +164,18 @@ public class MediaServiceImpl implements MediaService {
 
             log.info("Transformed command with temp paths: {}", updatedCommand);
 
-            double durationSeconds = tempInputs.stream().mapToDouble(a -> probeAndParse(a.toString())).sum();
-            long totalDurationMs = (long) (durationSeconds * 1000);
-            log.info("Total Duration: {}", totalDurationMs);
+            Map<String, Double> inputDurations = tempInputs.stream()
+                    .collect(Collectors.toMap(Path::toString, a -> probeAndParse(a.toString())));
 
             List<String> command = buildCommand(
                     updatedCommand.replace(processDto.storageOutputPath(), tempOutput.toString()));
 
+            long totalDurationMs = outputDurationEstimator.estimateOutputDurationMs(command, inputDurations);
+            log.info("Expected output duration: {} ms", totalDurationMs);
+
             boolean success = executeWithProgress(
                     command,
-                    it -> {
-                        ffmpegCmdRes.setPid(it.getPid());
-                        ffmpegCmdRes.setDuration(it.getDuration());
-                        ffmpegCmdRes.setProgress(it.getProgress());
-                        ffmpegCmdRes.setFinalFileSize(it.getFinalFileSize());
-                        ffmpegCmdRes.setStatus(ProcessStatus.PROCESSING);
-                        log.info("Progress update: {}% complete, duration={}, finalFileSize={} for processId={}",
-                                it.getProgress(), it.getDuration(), it.getFinalFileSize(), processDto.id());
-
-                        progressProducer.publishFfmpegProcessProgress(ffmpegCmdRes);
-                    },
+                    progressPublisher(ffmpegCmdRes),
                     totalDurationMs, processDto.id().toString());
 
             if (!success) {
@@ -132,42 +183,32 @@ public class MediaServiceImpl implements MediaService {
             }
 
             // Upload processed file back to Garage
-            uploadToGarage(downloadsBucket, processDto.storageOutputPath(), tempOutput);
+            String outputETag = uploadToGarage(downloadsBucket, processDto.storageOutputPath(), tempOutput);
 
             log.info("FFMPEG finalDuration={}, finalFileSize={} ms for processId={}", ffmpegCmdRes.getDuration(),
                     ffmpegCmdRes.getFinalFileSize(), processDto.id());
-            mainClient.updateStatusForProcess(
-                    ProcessStatus.COMPLETED,
-                    ffmpegCmdRes.getFinalFileSize(),
-                    ffmpegCmdRes.getDuration(),
-                    processDto.id().toString());
-
-            ffmpegCmdRes.setStatus(ProcessStatus.COMPLETED);
-            progressProducer.publishFfmpegProcessProgress(ffmpegCmdRes);
+            if (claim != null) {
+                jobResultIndex.complete(claim, new JobResultIndex.CachedResult(downloadsBucket,
+                        processDto.storageOutputPath(), outputETag, ffmpegCmdRes.getFinalFileSize(),
+                        ffmpegCmdRes.getDuration()));
+            }
 
-            // Make the Storage file downloadable
-            storageClient.makeFileDownloadable(processDto.storageIdOutput());
+            reportCompleted(processDto.id().toString(), processDto.storageIdOutput(), ffmpegCmdRes);
             log.info("Processing completed successfully. processId={}", processDto.id());
 
         } catch (Exception ex) {
 
-            ex.printStackTrace();
-
             log.error("Processing failed. processId={}, errorMessage={}, errorClass={}",
                     processDto.id(),
                     ex.getMessage(), ex);
 
-            mainClient.updateStatusForProcess(
-                    ProcessStatus.FAILED,
-                    ffmpegCmdRes.getFinalFileSize(),
-                    ffmpegCmdRes.getDuration(),
-                    processDto.id().toString());
-
-            ffmpegCmdRes.setStatus(ProcessStatus.FAILED);
-            progressProducer.publishFfmpegProcessProgress(ffmpegCmdRes);
+            reportFailed(processDto.id().toString(), ffmpegCmdRes);
 
             throw new MediaProcessingException("Media processing failed", ex);
         } finally {
+            if (claim != null) {
+                jobResultIndex.abandon(claim);
+            }
             // Clean up temp files
             tempInputs.forEach(this::deleteTempFile);
             // deleteTempFile(tempInput);
@@ -175,6 +216,278 @@ public class MediaServiceImpl implements MediaService {
         }
     }
 
+    // ===================== BATCH =====================
+
+    @Override
+    public void workOnBatch(BatchJobDto batch) {
+
+        log.info("Starting batch processing. batchId={}", batch.id());
+
+        ArrayList<Path> tempInputs = new ArrayList<>();
+        Path scratchDir = null;
+        boolean stepsStarted = false;
+
+        try {
+            if (batch.steps() == null || batch.steps().isEmpty()) {
+                throw new MediaProcessingException("Batch needs at least one step");
+            }
+            List<BatchStepDto> steps = orderSteps(batch.steps());
+            scratchDir = Files.createTempDirectory("batch-");
+
+            // token in a command -> local file it stands for
+            Map<String, String> localPaths = new HashMap<>();
+            // local file -> duration in seconds, inputs are probed once for all steps
+            Map<String, Double> durations = new ConcurrentHashMap<>();
+
+            for (Map.Entry<String, String> entry : batch.storageInputDetails().entrySet()) {
+                String storagePath = entry.getValue();
+                log.info("Storage ID: {}, Storage Path: {}", entry.getKey(), storagePath);
+
+                Path tempInput = downloadFromGarage(uploadsBucket, downloadsBucket, storagePath);
+                tempInputs.add(tempInput);
+                localPaths.put(storagePath, tempInput.toString());
+                durations.put(tempInput.toString(), probeAndParse(tempInput.toString()));
+            }
+            for (BatchStepDto step : steps) {
+                String outputName = step.outputName();
+                Path output = scratchDir.resolve(step.id() + outputName.substring(outputName.lastIndexOf('.')));
+                localPaths.put(outputName, output.toString());
+            }
+
+            Set<UUID> feedsOtherSteps = steps.stream()
+                    .flatMap(step -> dependenciesOf(step).stream())
+                    .collect(Collectors.toSet());
+
+            Map<UUID, CompletableFuture<Void>> stepFutures = new HashMap<>();
+            stepsStarted = true;
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (BatchStepDto step : steps) {
+                    CompletableFuture<?>[] dependencies = dependenciesOf(step).stream()
+                            .map(stepFutures::get)
+                            .toArray(CompletableFuture[]::new);
+
+                    stepFutures.put(step.id(), CompletableFuture.allOf(dependencies)
+                            .handleAsync((ignored, dependencyFailure) -> {
+                                if (dependencyFailure != null) {
+                                    log.warn("Skipping batch step, a dependency failed. batchId={}, stepId={}",
+                                            batch.id(), step.id());
+                                    reportStepFailed(step);
+                                    throw new CompletionException(dependencyFailure);
+                                }
+                                runBatchStep(step, localPaths, durations, feedsOtherSteps.contains(step.id()));
+                                return null;
+                            }, executor));
+                }
+
+                long failed = stepFutures.values().stream()
+                        .filter(future -> {
+                            try {
+                                future.join();
+                                return false;
+                            } catch (CompletionException e) {
+                                return true;
+                            }
+                        })
+                        .count();
+
+                if (failed > 0) {
+                    throw new MediaProcessingException(failed + " of " + steps.size() + " batch steps failed");
+                }
+            }
+
+            log.info("Batch processing completed successfully. batchId={}", batch.id());
+
+        } catch (Exception ex) {
+            log.error("Batch processing failed. batchId={}, errorMessage={}", batch.id(), ex.getMessage());
+            // nothing ran (bad step graph, download or probe failure), fail every final output;
+            // once steps have started each one reports its own status
+            if (!stepsStarted && batch.steps() != null) {
+                batch.steps().forEach(this::reportStepFailed);
+            }
+            throw new MediaProcessingException("Batch processing failed", ex);
+        } finally {
+            tempInputs.forEach(this::deleteTempFile);
+            deleteTempDirectory(scratchDir);
+        }
+    }
+
+    private void runBatchStep(BatchStepDto step, Map<String, String> localPaths, Map<String, Double> durations,
+            boolean feedsOtherSteps) {
+
+        FfmpegCmdResponse ffmpegCmdRes = new FfmpegCmdResponse(-1L, step.id().toString(), 0, "00:00:00:00.0000",
+                "0 KB", ProcessStatus.WAITING, 0, 0, -1, nodeId);
+
+        try {
+            // single pass, so a substituted local path is never matched again by
+            // another token; longest first so a path beats a shorter token it contains
+            String updatedCommand = step.command();
+            if (!localPaths.isEmpty()) {
+                Pattern tokens = Pattern.compile(localPaths.keySet().stream()
+                        .sorted(Comparator.comparingInt(String::length).reversed())
+                        .map(Pattern::quote)
+                        .collect(Collectors.joining("|")));
+                updatedCommand = tokens.matcher(updatedCommand)
+                        .replaceAll(match -> Matcher.quoteReplacement(localPaths.get(match.group())));
+            }
+
+            List<String> command = buildCommand(updatedCommand);
+            long totalDurationMs = outputDurationEstimator.estimateOutputDurationMs(command, durations);
+
+            boolean success = executeWithProgress(command, progressPublisher(ffmpegCmdRes), totalDurationMs,
+                    step.id().toString());
+            if (!success) {
+                throw new MediaProcessingException("FFmpeg execution failed");
+            }
+
+            Path output = Path.of(localPaths.get(step.outputName()));
+            if (feedsOtherSteps) {
+                durations.put(output.toString(), probeAndParse(output.toString()));
+            }
+
+            if (step.storageOutputPath() != null) {
+                uploadToGarage(downloadsBucket, step.storageOutputPath(), output);
+                reportCompleted(step.id().toString(), step.storageIdOutput(), ffmpegCmdRes);
+            }
+            log.info("Batch step completed. stepId={}", step.id());
+
+        } catch (Exception ex) {
+            log.error("Batch step failed. stepId={}, errorMessage={}", step.id(), ex.getMessage(), ex);
+            if (step.storageOutputPath() != null) {
+                reportFailed(step.id().toString(), ffmpegCmdRes);
+            }
+            throw new MediaProcessingException("Batch step failed", ex);
+        }
+    }
+
+    // intermediate steps have no process of their own in main-service
+    private void reportStepFailed(BatchStepDto step) {
+        if (step.storageOutputPath() == null) {
+            return;
+        }
+        try {
+            reportFailed(step.id().toString(), new FfmpegCmdResponse(-1L, step.id().toString(), 0,
+                    "00:00:00:00.0000", "0 KB", ProcessStatus.FAILED, 0, 0, -1, nodeId));
+        } catch (Exception e) {
+            log.warn("Failed to report batch step failure. stepId={}, errorMessage={}", step.id(), e.getMessage());
+        }
+    }
+
+    static List<UUID> dependenciesOf(BatchStepDto step) {
+        return step.dependsOn() == null ? List.of() : step.dependsOn();
+    }
+
+    // topological order, rejects unknown dependencies and cycles
+    static List<BatchStepDto> orderSteps(List<BatchStepDto> steps) {
+        Map<UUID, BatchStepDto> byId = new LinkedHashMap<>();
+        for (BatchStepDto step : steps) {
+            if (byId.put(step.id(), step) != null) {
+                throw new MediaProcessingException("Duplicate batch step id: " + step.id());
+            }
+        }
+
+        List<BatchStepDto> ordered = new ArrayList<>();
+        Set<UUID> placed = new HashSet<>();
+        while (ordered.size() < steps.size()) {
+            int before = ordered.size();
+            for (BatchStepDto step : byId.values()) {
+                for (UUID dependency : dependenciesOf(step)) {
+                    if (!byId.containsKey(dependency)) {
+                        throw new MediaProcessingException("Batch step " + step.id()
+                                + " depends on unknown step " + dependency);
+                    }
+                }
+                if (!placed.contains(step.id()) && placed.containsAll(dependenciesOf(step))) {
+                    ordered.add(step);
+                    placed.add(step.id());
+                }
+            }
+            if (ordered.size() == before) {
+                throw new MediaProcessingException("Batch steps contain a dependency cycle");
+            }
+        }
+        return ordered;
+    }
+
+    // every update is published, but only one per progress-interval-seconds is logged
+    private Consumer<FfmpegCmdResponse> progressPublisher(FfmpegCmdResponse ffmpegCmdRes) {
+        AtomicLong lastLoggedAt = new AtomicLong();
+        long logIntervalMs = TimeUnit.SECONDS.toMillis(progressLogIntervalSeconds);
+        return it -> {
+            ffmpegCmdRes.setPid(it.getPid());
+            ffmpegCmdRes.setDuration(it.getDuration());
+            ffmpegCmdRes.setProgress(it.getProgress());
+            ffmpegCmdRes.setFinalFileSize(it.getFinalFileSize());
+            ffmpegCmdRes.setSpeed(it.getSpeed());
+            ffmpegCmdRes.setFps(it.getFps());
+            ffmpegCmdRes.setEtaSeconds(it.getEtaSeconds());
+            ffmpegCmdRes.setStatus(ProcessStatus.PROCESSING);
+
+            long now = System.currentTimeMillis();
+            if (now - lastLoggedAt.get() >= logIntervalMs) {
+                lastLoggedAt.set(now);
+                log.info(
+                        "Progress update: {}% complete, duration={}, finalFileSize={}, speed={}x, eta={}s for processId={}",
+                        it.getProgress(), it.getDuration(), it.getFinalFileSize(), it.getSpeed(),
+                        it.getEtaSeconds(), ffmpegCmdRes.getProcessId());
+            } else {
+                progressSampledOutCounter.increment();
+            }
+
+            progressProducer.publishFfmpegProcessProgress(ffmpegCmdRes);
+        };
+    }
+
+    private void reportCompleted(String processId, String storageIdOutput, FfmpegCmdResponse ffmpegCmdRes) {
+        mainClient.updateStatusForProcess(
+                ProcessStatus.COMPLETED,
+                ffmpegCmdRes.getFinalFileSize(),
+                ffmpegCmdRes.getDuration(),
+                processId);
+
+        ffmpegCmdRes.setStatus(ProcessStatus.COMPLETED);
+        ffmpegCmdRes.setProgress(100);
+        ffmpegCmdRes.setEtaSeconds(0);
+        progressProducer.publishFfmpegProcessProgress(ffmpegCmdRes);
+
+        // Make the Storage file downloadable
+        storageClient.makeFileDownloadable(storageIdOutput);
+    }
+
+    private void reportFailed(String processId, FfmpegCmdResponse ffmpegCmdRes) {
+        mainClient.updateStatusForProcess(
+                ProcessStatus.FAILED,
+                ffmpegCmdRes.getFinalFileSize(),
+                ffmpegCmdRes.getDuration(),
+                processId);
+
+        ffmpegCmdRes.setStatus(ProcessStatus.FAILED);
+        progressProducer.publishFfmpegProcessProgress(ffmpegCmdRes);
+    }
+
+    // ===================== DEDUPLICATION =====================
+
+    // false if the previous output couldn't be copied, the job then runs normally
+    private boolean reuseCachedResult(ProcessDto processDto, JobResultIndex.CachedResult cached,
+            FfmpegCmdResponse ffmpegCmdRes) {
+        boolean sameObject = cached.bucket().equals(downloadsBucket)
+                && cached.key().equals(processDto.storageOutputPath());
+        if (!sameObject) {
+            try {
+                jobResultIndex.copyTo(cached, downloadsBucket, processDto.storageOutputPath());
+            } catch (Exception e) {
+                log.warn("Failed to reuse previous output, running ffmpeg. processId={}, errorMessage={}",
+                        processDto.id(), e.getMessage());
+                return false;
+            }
+        }
+
+        ffmpegCmdRes.setDuration(cached.duration());
+        ffmpegCmdRes.setFinalFileSize(cached.finalFileSize());
+        reportCompleted(processDto.id().toString(), processDto.storageIdOutput(), ffmpegCmdRes);
+        log.info("Processing completed from previous output. processId={}", processDto.id());
+        return true;
+    }
+
     // check in inputs bucket then if not found then in outputs bucket
     // since we are providing user the ability to choose from uploaded and processed
     // files
@@ -195,11 +508,12 @@ public class MediaServiceImpl implements MediaService {
         return temp;
     }
 
-    private void uploadToGarage(String bucket, String key, Path file) throws IOException {
+    // returns the ETag of the stored object
+    private String uploadToGarage(String bucket, String key, Path file) throws IOException {
         log.info("Uploading to Garage. bucket={}, key={}", bucket, key);
-        s3Client.putObject(
+        return s3Client.putObject(
                 PutObjectRequest.builder().bucket(bucket).key(key).build(),
-                RequestBody.fromFile(file));
+                RequestBody.fromFile(file)).eTag();
     }
 
     private void deleteTempFile(Path path) {
@@ -212,6 +526,17 @@ public class MediaServiceImpl implements MediaService {
         }
     }
 
+    private void deleteTempDirectory(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(this::deleteTempFile);
+        } catch (IOException e) {
+            log.warn("Failed to delete temp directory: {}", dir);
+        }
+    }
+
     // ===================== COMMAND BUILDER =====================
 
     private List<String> buildCommand(String rawCommand) {
@@ -219,7 +544,16 @@ public class MediaServiceImpl implements MediaService {
         List<String> command = new ArrayList<>();
         command.add(ffmpegExePath);
 
-        command.addAll(Arrays.asList(rawCommand.split("\s+")));
+        List<String> args = Arrays.asList(rawCommand.split("\s+"));
+        // progress lines are what drives both progress reporting and the watchdog
+        if (!args.contains("-progress")) {
+            command.addAll(List.of("-progress", "pipe:1"));
+        }
+        // the interactive status line would only crowd errors out of the output tail
+        if (!args.contains("-stats") && !args.contains("-nostats")) {
+            command.add("-nostats");
+        }
+        command.addAll(args);
 
         log.info("Executing FFmpeg command: {}", String.join(" ", command));
 
@@ -228,6 +562,7 @@ public class MediaServiceImpl implements MediaService {
 
     // ===================== EXECUTION =====================
 
+    @Override
     public boolean executeWithProgress(
             List<String> command,
             Consumer<FfmpegCmdResponse> progressCallback,
@@ -237,27 +572,69 @@ public class MediaServiceImpl implements MediaService {
         ProcessBuilder pb = new ProcessBuilder(command);
         pb.redirectErrorStream(true);
 
+        OutputTail outputTail = new OutputTail(outputTailLines);
+
+        if (jobSlots.isCancelled(processId)) {
+            throw new MediaProcessingException("Process was killed before FFmpeg started");
+        }
+
         try {
             Process process = pb.start();
             activeProcesses.put(processId, process);
+            // a kill that arrived while the process was starting only set the flag
+            if (jobSlots.isCancelled(processId)) {
+                process.destroyForcibly();
+            }
+            watchdog.register(processId, process, totalDurationMs);
 
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                 String line;
                 int percent = 0;
+                long currentTimeMs = 0;
+                double speed = 0;
+                double fps = 0;
+                long etaSeconds = -1;
                 String finalFileSize = "0 KB";
                 String finalFileDuration = "0";
+                long startedAt = System.currentTimeMillis();
 
                 while ((line = reader.readLine()) != null) {
+                    if (STATS_LINE.matcher(line).find()) {
+                        // -progress already reports the same numbers
+                        continue;
+                    }
+                    // -progress writes a block of key=value lines ending with progress=continue|end
+                    boolean endOfProgressBlock = line.startsWith("progress=");
+
                     if (line.startsWith("out_time_ms=")) {
                         try {
-                            long currentTimeMs = Long.parseLong(line.split("=")[1].trim()) / 1000; // Convert micro to
-                                                                                                   // milli
+                            currentTimeMs = Long.parseLong(line.split("=")[1].trim()) / 1000; // Convert micro to
+                                                                                              // milli
                             if (totalDurationMs > 0) {
                                 percent = (int) ((currentTimeMs * 100) / totalDurationMs);
+                                etaSeconds = estimateEtaSeconds(totalDurationMs, currentTimeMs, speed,
+                                        System.currentTimeMillis() - startedAt);
                             }
+                            watchdog.heartbeat(processId, currentTimeMs, speed);
                         } catch (NumberFormatException e) {
                             log.warn("Could not parse out_time_ms");
                         }
+                    } else if (line.startsWith("speed=")) {
+                        // "speed=1.53x", or "speed=N/A" before the first frame
+                        try {
+                            speed = Double.parseDouble(line.split("=")[1].replace("x", "").trim());
+                        } catch (NumberFormatException e) {
+                            speed = 0;
+                        }
+                    } else if (line.startsWith("fps=")) {
+                        try {
+                            fps = Double.parseDouble(line.split("=")[1].trim());
+                        } catch (NumberFormatException e) {
+                            log.warn("Could not parse fps");
+                        }
+                    } else if (line.equals("progress=end")) {
+                        percent = 100;
+                        etaSeconds = 0;
                     } else if (line.startsWith("size=")) {
                         try {
                             finalFileSize = line.split("=")[1].replace("time", "").trim();
@@ -270,33 +647,72 @@ public class MediaServiceImpl implements MediaService {
                         } catch (NumberFormatException e) {
                             log.warn("Could not parse total_size");
                         }
-                    } else {
-                        // log everything else — this is where ffmpeg errors show up
-                        log.info("FFmpeg output: {}", line);
+                    } else if (!PROGRESS_LINE.matcher(line).matches()) {
+                        // everything else — this is where ffmpeg errors show up
+                        outputTail.add(line);
+                        log.debug("FFmpeg output: {}", OutputTail.redact(line));
                     }
 
-                    progressCallback
-                            .accept(new FfmpegCmdResponse(process.pid(), "", Math.min(percent, 100), finalFileDuration,
-                                    finalFileSize, ProcessStatus.PROCESSING));
+                    if (endOfProgressBlock) {
+                        progressCallback
+                                .accept(new FfmpegCmdResponse(process.pid(), "", Math.min(percent, 100),
+                                        finalFileDuration, finalFileSize, ProcessStatus.PROCESSING, speed, fps,
+                                        etaSeconds, nodeId));
+                    }
                 }
             }
 
-            boolean finished = process.waitFor(10, TimeUnit.MINUTES);
-            if (!finished) {
-                process.destroyForcibly();
+            // stdout is closed, ffmpeg is on its way out; if it hangs while
+            // finalizing the watchdog still sees no out_time advance and kills it
+            int exitCode = process.waitFor();
+
+            FfmpegWatchdog.Verdict verdict = watchdog.unregister(processId);
+            if (verdict != null || exitCode != 0) {
+                logOutputTail(processId, exitCode, outputTail);
+            }
+            if (verdict == FfmpegWatchdog.Verdict.STALLED) {
+                throw new MediaProcessingException("FFmpeg stalled");
+            }
+            if (verdict == FfmpegWatchdog.Verdict.TIMED_OUT) {
                 throw new MediaProcessingException("FFmpeg timed out");
             }
-            return process.exitValue() == 0;
+            return exitCode == 0;
 
+        } catch (MediaProcessingException e) {
+            throw e;
         } catch (Exception e) {
+            logOutputTail(processId, -1, outputTail);
             throw new MediaProcessingException("Failed during FFmpeg execution", e);
         } finally {
+            watchdog.unregister(processId);
             activeProcesses.remove(processId);
         }
     }
 
+    private void logOutputTail(String processId, int exitCode, OutputTail outputTail) {
+        if (outputTail.isEmpty()) {
+            return;
+        }
+        log.error("FFmpeg failed with exit code {} for processId={}, output:{}{}", exitCode, processId,
+                System.lineSeparator(), outputTail);
+    }
+
+    // Prefer ffmpeg's own realtime factor; before it reports one, extrapolate
+    // from how much output we produced in the wall time spent so far.
+    private long estimateEtaSeconds(long totalDurationMs, long currentTimeMs, double speed, long elapsedMs) {
+        long remainingMs = Math.max(totalDurationMs - currentTimeMs, 0);
+        if (speed > 0) {
+            return (long) (remainingMs / speed / 1000);
+        }
+        if (currentTimeMs > 0) {
+            return remainingMs * elapsedMs / currentTimeMs / 1000;
+        }
+        return -1;
+    }
+
     // ===================== FFPROBE =====================
 
+    @Override
     public String probe(String inputPath) {
 
         log.debug("Running ffprobe for inputPath={}", inputPath);
@@ -345,6 +761,7 @@ public class MediaServiceImpl implements MediaService {
 
     // ===================== PARSE =====================
 
+    @Override
     public Double probeAndParse(String inputPath) {
 
         String output = probe(inputPath);
@@ -369,6 +786,26 @@ public class MediaServiceImpl implements MediaService {
         }
     }
 
+    @Override
+    public Set<String> getActiveProcessIds() {
+        return Set.copyOf(activeProcesses.keySet());
+    }
+
+    @Override
+    public boolean cancelPending(String processId) {
+        if (!jobSlots.cancel(processId)) {
+            return false;
+        }
+        log.info("Process killed before FFmpeg started, processId:{}", processId);
+        mainClient.updateStatusForProcess(
+                ProcessStatus.CANCELLED,
+                "0 KB",
+                "00:00:00:00.0000",
+                processId);
+        return true;
+    }
+
+    @Override
     public String killProcess(String processId) {
         try {
             Process process = activeProcesses.get(processId);
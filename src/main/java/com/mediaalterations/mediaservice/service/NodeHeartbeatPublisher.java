@@ -0,0 +1,63 @@
+package com.mediaalterations.mediaservice.service;
+
+import com.mediaalterations.mediaservice.dto.NodeHeartbeat;
+import com.mediaalterations.mediaservice.messaging.RabbitMQProducer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class NodeHeartbeatPublisher {
+
+    private final MediaService mediaService;
+    private final JobSlots jobSlots;
+    private final RabbitMQProducer producer;
+
+    @Value("${media.node.id}")
+    private String nodeId;
+
+    @Scheduled(fixedRateString = "${media.cluster.heartbeat-interval-seconds:5}", timeUnit = TimeUnit.SECONDS)
+    public void publish() {
+        Set<String> running = mediaService.getActiveProcessIds();
+        NodeHeartbeat heartbeat = new NodeHeartbeat(
+                nodeId,
+                jobSlots.maxSlots(JobSlots.Pool.ENCODE),
+                jobSlots.freeSlots(JobSlots.Pool.ENCODE),
+                cpuLoad(),
+                scratchFreeBytes(),
+                running,
+                System.currentTimeMillis());
+        try {
+            producer.publishNodeHeartbeat(heartbeat);
+        } catch (Exception e) {
+            log.warn("Failed to publish node heartbeat. nodeId={}, errorMessage={}", nodeId, e.getMessage());
+        }
+    }
+
+    private double cpuLoad() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        double load = os.getSystemLoadAverage();
+        return load < 0 ? -1 : load / os.getAvailableProcessors();
+    }
+
+    private long scratchFreeBytes() {
+        try {
+            return Files.getFileStore(Path.of(System.getProperty("java.io.tmpdir"))).getUsableSpace();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
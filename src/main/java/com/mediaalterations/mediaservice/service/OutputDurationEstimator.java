@@ -0,0 +1,254 @@
+package com.mediaalterations.mediaservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.DoubleStream;
+
+/*
+ * Works out how long the ffmpeg OUTPUT is going to be, so progress can be
+ * measured against out_time instead of the sum of all input durations.
+ *
+ * Handles the things our users actually send: input/output seeking and
+ * trimming (-ss, -t, -to), looped inputs (-loop, -stream_loop), concat vs.
+ * overlay/mix filter graphs, trim/atrim and speed changes through
+ * setpts/atempo.
+ */
+@Component
+@Slf4j
+public class OutputDurationEstimator {
+
+    private static final Pattern SETPTS_MULTIPLY = Pattern.compile("setpts=([0-9.]+)\\*PTS");
+    private static final Pattern SETPTS_DIVIDE = Pattern.compile("setpts=PTS/([0-9.]+)");
+    private static final Pattern ATEMPO = Pattern.compile("atempo=([0-9.]+)");
+    private static final Pattern TRIM = Pattern.compile("\\ba?trim=([^,;\\[]+)");
+
+    // filters whose output lasts as long as the longest (or shortest) input
+    private static final Pattern PARALLEL_FILTERS = Pattern
+            .compile("\\b(overlay|amix|amerge|hstack|vstack|xstack|blend|mergeplanes)\\b");
+
+    // loops: 0 plays the input once, N plays it N+1 times, -1 loops forever
+    private record InputSpec(String path, Double seek, Double duration, Double to, int loops) {
+    }
+
+    /**
+     * @param command        full ffmpeg argument list (temp paths already
+     *                       substituted)
+     * @param inputDurations probed duration in seconds keyed by input path
+     * @return expected output duration in milliseconds
+     */
+    public long estimateOutputDurationMs(List<String> command, Map<String, Double> inputDurations) {
+        double fallback = inputDurations.values().stream().mapToDouble(Double::doubleValue).sum();
+        try {
+            double seconds = estimate(command, inputDurations);
+            if (seconds <= 0 || Double.isInfinite(seconds)) {
+                log.warn("Could not estimate output duration, falling back to input total {}s", fallback);
+                return (long) (fallback * 1000);
+            }
+            return (long) (seconds * 1000);
+        } catch (RuntimeException e) {
+            log.warn("Failed to estimate output duration, falling back to input total {}s", fallback, e);
+            return (long) (fallback * 1000);
+        }
+    }
+
+    private double estimate(List<String> command, Map<String, Double> inputDurations) {
+
+        List<InputSpec> inputs = new ArrayList<>();
+        StringBuilder filters = new StringBuilder();
+        boolean shortest = false;
+
+        Double seek = null, duration = null, to = null;
+        int loops = 0;
+
+        // first element is the ffmpeg executable
+        for (int i = 1; i < command.size(); i++) {
+            String arg = command.get(i);
+            String value = i + 1 < command.size() ? command.get(i + 1) : null;
+
+            switch (arg) {
+                case "-ss" -> {
+                    seek = parseTime(value);
+                    i++;
+                }
+                case "-t" -> {
+                    duration = parseTime(value);
+                    i++;
+                }
+                case "-to" -> {
+                    to = parseTime(value);
+                    i++;
+                }
+                case "-loop" -> {
+                    // image2 demuxer: "-loop 1" repeats the picture forever
+                    loops = "0".equals(value) ? 0 : -1;
+                    i++;
+                }
+                case "-stream_loop" -> {
+                    try {
+                        loops = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        loops = 0;
+                    }
+                    i++;
+                }
+                case "-i" -> {
+                    inputs.add(new InputSpec(value, seek, duration, to, loops));
+                    seek = null;
+                    duration = null;
+                    to = null;
+                    loops = 0;
+                    i++;
+                }
+                case "-filter_complex", "-lavfi", "-vf", "-af", "-filter:v", "-filter:a" -> {
+                    filters.append(value).append(';');
+                    i++;
+                }
+                case "-shortest" -> shortest = true;
+                default -> {
+                }
+            }
+        }
+
+        if (inputs.isEmpty()) {
+            return 0;
+        }
+
+        // an input looped forever is unbounded unless its own -t/-to cuts it
+        List<Double> durations = inputs.stream()
+                .map(in -> trimmed(looped(inputDurations.getOrDefault(in.path(), 0.0), in.loops()), in.seek(),
+                        in.duration(), in.to()))
+                .toList();
+
+        String graph = filters.toString();
+
+        double result;
+        if (graph.contains("concat")) {
+            result = durations.stream().mapToDouble(Double::doubleValue).sum();
+        } else if (shortest || graph.contains("shortest=1") || graph.contains("duration=shortest")) {
+            result = bounded(durations).min().orElse(Double.POSITIVE_INFINITY);
+        } else if (graph.contains("duration=first")) {
+            result = durations.get(0);
+        } else if (PARALLEL_FILTERS.matcher(graph).find() || durations.size() > 1) {
+            // ffmpeg keeps going until the longest mapped stream ends, so a
+            // looped input makes the output unbounded
+            result = durations.stream().mapToDouble(Double::doubleValue).max().orElse(0);
+        } else {
+            result = durations.get(0);
+        }
+
+        result = applyTrimFilter(result, graph);
+        result *= speedFactor(graph);
+
+        // whatever is left in seek/duration/to after the last -i are output options
+        return trimmed(result, seek, duration, to);
+    }
+
+    private double looped(double duration, int loops) {
+        return loops < 0 ? Double.POSITIVE_INFINITY : duration * (loops + 1);
+    }
+
+    // with -shortest, unbounded (looped) inputs don't decide when the output ends
+    private DoubleStream bounded(List<Double> durations) {
+        return durations.stream().mapToDouble(Double::doubleValue).filter(Double::isFinite);
+    }
+
+    private double trimmed(double total, Double seek, Double duration, Double to) {
+        double start = seek != null ? seek : 0;
+        double end = to != null ? Math.min(to, total) : total;
+        double length = end - start;
+        if (duration != null) {
+            length = Math.min(length, duration);
+        }
+        return Math.max(length, 0);
+    }
+
+    private double applyTrimFilter(double total, String graph) {
+        Matcher matcher = TRIM.matcher(graph);
+        if (!matcher.find()) {
+            return total;
+        }
+        Double start = null, end = null, duration = null;
+        for (String option : matcher.group(1).split(":")) {
+            String[] kv = option.split("=", 2);
+            if (kv.length != 2) {
+                continue;
+            }
+            switch (kv[0]) {
+                case "start" -> start = parseTime(kv[1]);
+                case "end" -> end = parseTime(kv[1]);
+                case "duration" -> duration = parseTime(kv[1]);
+                default -> {
+                }
+            }
+        }
+        return trimmed(total, start, duration, end);
+    }
+
+    // >1 means the output is longer than the input (slow motion)
+    private double speedFactor(String graph) {
+        double video = 1.0;
+        Matcher multiply = SETPTS_MULTIPLY.matcher(graph);
+        if (multiply.find()) {
+            video = Double.parseDouble(multiply.group(1));
+        } else {
+            Matcher divide = SETPTS_DIVIDE.matcher(graph);
+            if (divide.find()) {
+                video = 1.0 / Double.parseDouble(divide.group(1));
+            }
+        }
+
+        // atempo can be chained (atempo=2.0,atempo=2.0) since it only accepts 0.5-100
+        double audio = 1.0;
+        boolean hasAudioTempo = false;
+        Matcher tempo = ATEMPO.matcher(graph);
+        while (tempo.find()) {
+            audio /= Double.parseDouble(tempo.group(1));
+            hasAudioTempo = true;
+        }
+
+        if (!hasAudioTempo) {
+            return video;
+        }
+        if (video == 1.0) {
+            return audio;
+        }
+        return Math.max(video, audio);
+    }
+
+    // ffmpeg time duration syntax: [-][HH:]MM:SS[.m...] or S+[.m...][s|ms|us]
+    static Double parseTime(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        try {
+            if (v.contains(":")) {
+                String[] parts = v.split(":");
+                double seconds = 0;
+                for (String part : parts) {
+                    seconds = seconds * 60 + Double.parseDouble(part);
+                }
+                return seconds;
+            }
+            if (v.endsWith("ms")) {
+                return Double.parseDouble(v.substring(0, v.length() - 2)) / 1000;
+            }
+            if (v.endsWith("us")) {
+                return Double.parseDouble(v.substring(0, v.length() - 2)) / 1_000_000;
+            }
+            if (v.endsWith("s")) {
+                return Double.parseDouble(v.substring(0, v.length() - 1));
+            }
+            return Double.parseDouble(v);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
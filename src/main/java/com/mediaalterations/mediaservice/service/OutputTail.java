@@ -0,0 +1,49 @@
+package com.mediaalterations.mediaservice.service;
+
+import java.util.ArrayDeque;
+import java.util.regex.Pattern;
+
+/*
+ * The last few lines of a job's ffmpeg output. Nothing is logged while the
+ * job runs; the tail is only written out if the job fails.
+ *
+ * Previews and ABR ladders read their input from presigned URLs and ffmpeg
+ * echoes the URL in its errors, so query strings are stripped on the way in:
+ * the signature in them is a working credential until it expires.
+ */
+final class OutputTail {
+
+    private static final Pattern URL_QUERY = Pattern.compile("(\\b[a-zA-Z][a-zA-Z0-9+.-]*://[^\\s?]*)\\?[^\\s'\":]*");
+
+    private final int capacity;
+    private final ArrayDeque<String> lines;
+    private long overwritten;
+
+    OutputTail(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+        this.lines = new ArrayDeque<>(this.capacity);
+    }
+
+    void add(String line) {
+        if (lines.size() == capacity) {
+            lines.removeFirst();
+            overwritten++;
+        }
+        lines.addLast(redact(line));
+    }
+
+    static String redact(String line) {
+        return line.indexOf('?') < 0 ? line : URL_QUERY.matcher(line).replaceAll("$1?<redacted>");
+    }
+
+    boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        String tail = String.join(System.lineSeparator(), lines);
+        return overwritten == 0 ? tail
+                : "... " + overwritten + " earlier lines omitted" + System.lineSeparator() + tail;
+    }
+}
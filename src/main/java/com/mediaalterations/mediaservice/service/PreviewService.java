@@ -0,0 +1,7 @@
+package com.mediaalterations.mediaservice.service;
+
+import com.mediaalterations.mediaservice.dto.PreviewDto;
+
+public interface PreviewService {
+    void generatePreview(PreviewDto preview);
+}
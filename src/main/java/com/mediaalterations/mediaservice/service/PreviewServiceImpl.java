@@ -0,0 +1,252 @@
+package com.mediaalterations.mediaservice.service;
+
+import com.mediaalterations.mediaservice.dto.FfmpegCmdResponse;
+import com.mediaalterations.mediaservice.dto.PreviewDto;
+import com.mediaalterations.mediaservice.dto.ProcessStatus;
+import com.mediaalterations.mediaservice.exception.MediaProcessingException;
+import com.mediaalterations.mediaservice.feignClients.MainClient;
+import com.mediaalterations.mediaservice.feignClients.StorageClient;
+import com.mediaalterations.mediaservice.messaging.RabbitMQProducer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Poster frame + seek-preview sprite sheet for an uploaded video.
+ *
+ * Nothing is downloaded: ffmpeg reads the object through a presigned url and
+ * every tile is its own input with a fast (keyframe) input seek, so only the
+ * byte ranges around those keyframes are fetched and only keyframes are
+ * decoded. Each of those inputs probes as little as possible, since the same
+ * object gets opened once per tile. Short sources are cheaper to read once,
+ * so they go through a single keyframe-only input and a select filter
+ * instead. Both images come out of a single ffmpeg run and are uploaded
+ * straight away.
+ */
+@RequiredArgsConstructor
+@Slf4j
+@Service
+public class PreviewServiceImpl implements PreviewService {
+
+    @Value("${ffmpeg.path}")
+    private String ffmpegExePath;
+
+    @Value("${garage.bucket.downloads}")
+    private String downloadsBucket;
+
+    @Value("${media.node.id}")
+    private String nodeId;
+
+    @Value("${media.preview.poster-offset-seconds:5}")
+    private double posterOffsetSeconds;
+
+    @Value("${media.preview.sprite-columns:5}")
+    private int defaultColumns;
+
+    @Value("${media.preview.sprite-rows:5}")
+    private int defaultRows;
+
+    @Value("${media.preview.tile-width:160}")
+    private int defaultTileWidth;
+
+    // probe budget for every url input, ffmpeg's defaults are 5 MB / 5 s
+    @Value("${media.preview.probesize:262144}")
+    private long probeSize;
+
+    @Value("${media.preview.analyzeduration-us:500000}")
+    private long analyzeDurationUs;
+
+    // up to this length the source is read once instead of seeked per tile
+    @Value("${media.preview.single-input-max-seconds:120}")
+    private double singleInputMaxSeconds;
+
+    private final MediaService mediaService;
+    private final GaragePresigner garagePresigner;
+    private final RabbitMQProducer progressProducer;
+    private final MainClient mainClient;
+    private final StorageClient storageClient;
+
+    private final S3Client s3Client;
+
+    @Override
+    public void generatePreview(PreviewDto preview) {
+
+        log.info("Starting preview generation. processId={}", preview.id());
+
+        FfmpegCmdResponse ffmpegCmdRes = new FfmpegCmdResponse(-1L, preview.id().toString(), 0, "00:00:00:00.0000",
+                "0 KB", ProcessStatus.PROCESSING, 0, 0, -1, nodeId);
+
+        Path poster = null;
+        Path sprite = null;
+
+        try {
+            poster = Files.createTempFile("poster-", ".jpg");
+            sprite = Files.createTempFile("sprite-", ".jpg");
+
+            String url = garagePresigner.presignedGetUrl(preview.storageInputPath());
+            double duration = mediaService.probeAndParse(url);
+
+            List<String> command = buildPreviewCommand(url, duration, preview, poster, sprite);
+
+            boolean success = mediaService.executeWithProgress(command, it -> ffmpegCmdRes.setPid(it.getPid()), 0,
+                    preview.id().toString());
+            if (!success) {
+                throw new MediaProcessingException("FFmpeg preview generation failed");
+            }
+
+            uploadToGarage(preview.posterOutputPath(), poster);
+            uploadToGarage(preview.spriteOutputPath(), sprite);
+
+            ffmpegCmdRes.setFinalFileSize((Files.size(poster) + Files.size(sprite)) / 1024 + " KB");
+            mainClient.updateStatusForProcess(
+                    ProcessStatus.COMPLETED,
+                    ffmpegCmdRes.getFinalFileSize(),
+                    ffmpegCmdRes.getDuration(),
+                    preview.id().toString());
+
+            storageClient.makeFileDownloadable(preview.posterStorageId());
+            storageClient.makeFileDownloadable(preview.spriteStorageId());
+
+            ffmpegCmdRes.setProgress(100);
+            ffmpegCmdRes.setEtaSeconds(0);
+            ffmpegCmdRes.setStatus(ProcessStatus.COMPLETED);
+            progressProducer.publishFfmpegProcessProgress(ffmpegCmdRes);
+
+            log.info("Preview generation completed. processId={}", preview.id());
+
+        } catch (Exception ex) {
+
+            log.error("Preview generation failed. processId={}, errorMessage={}", preview.id(), ex.getMessage(), ex);
+
+            mainClient.updateStatusForProcess(
+                    ProcessStatus.FAILED,
+                    ffmpegCmdRes.getFinalFileSize(),
+                    ffmpegCmdRes.getDuration(),
+                    preview.id().toString());
+
+            ffmpegCmdRes.setStatus(ProcessStatus.FAILED);
+            progressProducer.publishFfmpegProcessProgress(ffmpegCmdRes);
+
+            throw new MediaProcessingException("Preview generation failed", ex);
+        } finally {
+            deleteTempFile(poster);
+            deleteTempFile(sprite);
+        }
+    }
+
+    // ===================== COMMAND BUILDER =====================
+
+    private List<String> buildPreviewCommand(String url, double duration, PreviewDto preview, Path poster,
+            Path sprite) {
+
+        int columns = preview.spriteColumns() != null ? preview.spriteColumns() : defaultColumns;
+        int rows = preview.spriteRows() != null ? preview.spriteRows() : defaultRows;
+        int tileWidth = preview.tileWidth() != null ? preview.tileWidth() : defaultTileWidth;
+
+        List<String> command = new ArrayList<>(List.of(ffmpegExePath, "-nostdin", "-y", "-v", "error",
+                "-nostats", "-progress", "pipe:1"));
+
+        double posterSeconds = Math.min(posterOffsetSeconds, duration / 2);
+        String graph = duration <= singleInputMaxSeconds
+                ? singleInputGraph(command, url, duration, posterSeconds, columns, rows, tileWidth)
+                : seekPerTileGraph(command, url, duration, posterSeconds, columns, rows, tileWidth);
+
+        command.addAll(List.of(
+                "-filter_complex", graph,
+                "-map", "[poster]", "-frames:v", "1", "-q:v", "3", poster.toString(),
+                "-map", "[sprite]", "-frames:v", "1", "-q:v", "5", sprite.toString()));
+
+        log.debug("Executing FFmpeg preview command with {} inputs", Collections.frequency(command, "-i"));
+
+        return command;
+    }
+
+    // one keyframe-only pass over the source, select keeps the first keyframe
+    // of every tile interval
+    private String singleInputGraph(List<String> command, String url, double duration, double posterSeconds,
+            int columns, int rows, int tileWidth) {
+        int tiles = columns * rows;
+
+        command.addAll(List.of("-skip_frame", "nokey"));
+        addProbeLimits(command);
+        command.addAll(List.of("-an", "-sn", "-dn", "-i", url));
+
+        return String.format(Locale.ROOT,
+                "[0:v]split=2[p][s];"
+                        + "[p]select='gte(t,%.3f)',trim=end_frame=1,setpts=PTS-STARTPTS[poster];"
+                        + "[s]select='isnan(prev_selected_t)+gte(t-prev_selected_t,%.3f)',"
+                        + "scale=%d:-2,tile=%dx%d[sprite]",
+                posterSeconds, duration / tiles, tileWidth, columns, rows);
+    }
+
+    private String seekPerTileGraph(List<String> command, String url, double duration, double posterSeconds,
+            int columns, int rows, int tileWidth) {
+        int tiles = columns * rows;
+
+        // input 0 is the poster, inputs 1..tiles are the sprite tiles
+        addSeekInput(command, url, posterSeconds);
+        for (int i = 0; i < tiles; i++) {
+            addSeekInput(command, url, duration * (i + 0.5) / tiles);
+        }
+
+        StringBuilder graph = new StringBuilder("[0:v]trim=end_frame=1,setpts=PTS-STARTPTS[poster];");
+        StringBuilder tileLabels = new StringBuilder();
+        for (int i = 0; i < tiles; i++) {
+            graph.append(String.format(Locale.ROOT, "[%d:v]trim=end_frame=1,setpts=PTS-STARTPTS,scale=%d:-2[t%d];",
+                    i + 1, tileWidth, i));
+            tileLabels.append("[t").append(i).append(']');
+        }
+        graph.append(tileLabels)
+                .append(String.format(Locale.ROOT, "concat=n=%d:v=1:a=0,tile=%dx%d[sprite]", tiles, columns, rows));
+
+        return graph.toString();
+    }
+
+    // -noaccurate_seek keeps the keyframe the demuxer landed on instead of
+    // decoding forward to the exact timestamp
+    private void addSeekInput(List<String> command, String url, double seconds) {
+        command.addAll(List.of(
+                "-noaccurate_seek",
+                "-skip_frame", "nokey",
+                "-ss", String.format(Locale.ROOT, "%.3f", seconds),
+                "-t", "0.1"));
+        addProbeLimits(command);
+        command.addAll(List.of("-an", "-sn", "-dn", "-i", url));
+    }
+
+    private void addProbeLimits(List<String> command) {
+        command.addAll(List.of(
+                "-probesize", String.valueOf(probeSize),
+                "-analyzeduration", String.valueOf(analyzeDurationUs)));
+    }
+
+    private void uploadToGarage(String key, Path file) {
+        log.info("Uploading to Garage. bucket={}, key={}", downloadsBucket, key);
+        s3Client.putObject(
+                PutObjectRequest.builder().bucket(downloadsBucket).key(key).build(),
+                RequestBody.fromFile(file));
+    }
+
+    private void deleteTempFile(Path path) {
+        if (path != null) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Failed to delete temp file: {}", path);
+            }
+        }
+    }
+}
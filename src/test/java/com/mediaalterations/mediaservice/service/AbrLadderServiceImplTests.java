@@ -0,0 +1,68 @@
+package com.mediaalterations.mediaservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import com.mediaalterations.mediaservice.dto.AbrLadderDto;
+import com.mediaalterations.mediaservice.dto.RenditionDto;
+import com.mediaalterations.mediaservice.dto.StreamingFormat;
+import com.mediaalterations.mediaservice.exception.MediaProcessingException;
+
+class AbrLadderServiceImplTests {
+
+	private static AbrLadderDto ladder(RenditionDto... renditions) {
+		return new AbrLadderDto(UUID.randomUUID(), "uploads/in.mp4", "storage-id", "abr/out", StreamingFormat.HLS,
+				List.of(renditions), null, "user", null);
+	}
+
+	private static void assertRejected(AbrLadderDto ladder) {
+		assertThrows(MediaProcessingException.class, () -> AbrLadderServiceImpl.validate(ladder));
+	}
+
+	@Test
+	void validLadderPasses() {
+		assertDoesNotThrow(() -> AbrLadderServiceImpl.validate(ladder(
+				new RenditionDto("1080p", 1080, "5000k", "192k"),
+				new RenditionDto("720p", 720, "2.5M", "128k"))));
+	}
+
+	@Test
+	void renditionNamesMustBeSafeForPathsAndStreamMap() {
+		assertRejected(ladder(new RenditionDto("../etc", 720, "3000k", "128k")));
+		assertRejected(ladder(new RenditionDto("a/b", 720, "3000k", "128k")));
+		assertRejected(ladder(new RenditionDto("720p,name:x", 720, "3000k", "128k")));
+		assertRejected(ladder(new RenditionDto("720 p", 720, "3000k", "128k")));
+		assertRejected(ladder(new RenditionDto(null, 720, "3000k", "128k")));
+	}
+
+	@Test
+	void renditionNamesMustBeUnique() {
+		assertRejected(ladder(new RenditionDto("720p", 720, "3000k", "128k"),
+				new RenditionDto("720p", 720, "2000k", "128k")));
+	}
+
+	@Test
+	void heightMustBePositiveAndEven() {
+		assertRejected(ladder(new RenditionDto("720p", 0, "3000k", "128k")));
+		assertRejected(ladder(new RenditionDto("721p", 721, "3000k", "128k")));
+	}
+
+	@Test
+	void bitratesAreRequired() {
+		assertRejected(ladder(new RenditionDto("720p", 720, null, "128k")));
+		assertRejected(ladder(new RenditionDto("720p", 720, "3000k", null)));
+		assertRejected(ladder(new RenditionDto("720p", 720, "3000k -vf x", "128k")));
+	}
+
+	@Test
+	void ladderNeedsRenditionsAndFormat() {
+		assertRejected(ladder());
+		assertRejected(new AbrLadderDto(UUID.randomUUID(), "uploads/in.mp4", "storage-id", "abr/out", null,
+				List.of(new RenditionDto("720p", 720, "3000k", "128k")), null, "user", null));
+	}
+}
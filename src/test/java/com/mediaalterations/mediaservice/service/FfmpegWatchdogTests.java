@@ -0,0 +1,218 @@
+package com.mediaalterations.mediaservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class FfmpegWatchdogTests {
+
+	private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+	private FfmpegWatchdog watchdog;
+
+	@BeforeEach
+	void setUp() {
+		watchdog = new FfmpegWatchdog(new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(watchdog, "stallTimeoutSeconds", 120L);
+		ReflectionTestUtils.setField(watchdog, "minTimeoutMinutes", 10L);
+		ReflectionTestUtils.setField(watchdog, "timeoutFactor", 3.0);
+		ReflectionTestUtils.setField(watchdog, "minSpeed", 0.25);
+		ReflectionTestUtils.setField(watchdog, "killGraceSeconds", 15L);
+		ReflectionTestUtils.setField(watchdog, "maxOutputFactor", 2.0);
+		ReflectionTestUtils.setField(watchdog, "maxRuntimeMinutes", 360L);
+	}
+
+	@Test
+	void stalledJobIsTerminated() {
+		FakeProcess process = new FakeProcess();
+		long start = System.currentTimeMillis();
+		watchdog.register("job", process, 60 * MINUTE);
+
+		watchdog.check(start + 3 * MINUTE);
+
+		assertTrue(process.destroyed);
+		assertEquals(FfmpegWatchdog.Verdict.STALLED, watchdog.unregister("job"));
+	}
+
+	@Test
+	void deadlineScalesWithExpectedDurationAndSpeed() {
+		FakeProcess process = new FakeProcess();
+		long start = System.currentTimeMillis();
+		// 20 min of output at 1x, deadline is 60 min
+		watchdog.register("job", process, 20 * MINUTE);
+		watchdog.heartbeat("job", MINUTE, 1.0);
+
+		advance(start, 59 * MINUTE);
+		watchdog.check(start + 59 * MINUTE);
+		assertFalse(process.destroyed);
+
+		advance(start, 61 * MINUTE);
+		watchdog.check(start + 61 * MINUTE);
+		assertTrue(process.destroyed);
+		assertEquals(FfmpegWatchdog.Verdict.TIMED_OUT, watchdog.unregister("job"));
+	}
+
+	@Test
+	void deadlineNeverDropsBelowTheFloor() {
+		FakeProcess process = new FakeProcess();
+		long start = System.currentTimeMillis();
+		watchdog.register("job", process, 10_000);
+		watchdog.heartbeat("job", 1_000, 10.0);
+
+		advance(start, 9 * MINUTE);
+		watchdog.check(start + 9 * MINUTE);
+
+		assertFalse(process.destroyed);
+	}
+
+	@Test
+	void underestimatedOutputGetsMoreTime() {
+		FakeProcess process = new FakeProcess();
+		long start = System.currentTimeMillis();
+		// estimated 20 min at 1x (60 min deadline), output is already at 30 min
+		watchdog.register("job", process, 20 * MINUTE);
+		watchdog.heartbeat("job", 30 * MINUTE, 1.0);
+
+		advance(start, 70 * MINUTE);
+		watchdog.check(start + 70 * MINUTE);
+
+		assertFalse(process.destroyed);
+	}
+
+	@Test
+	void runawayOutputStillHitsTheDeadline() {
+		FakeProcess process = new FakeProcess();
+		long start = System.currentTimeMillis();
+		// looped image without -shortest: out_time keeps advancing far past the estimate
+		watchdog.register("job", process, 20 * MINUTE);
+		watchdog.heartbeat("job", 500 * MINUTE, 1.0);
+
+		// output counts for at most 2x the estimate: 40 min at 1x, deadline is 120 min
+		advance(start, 119 * MINUTE);
+		watchdog.check(start + 119 * MINUTE);
+		assertFalse(process.destroyed);
+
+		advance(start, 121 * MINUTE);
+		watchdog.check(start + 121 * MINUTE);
+		assertTrue(process.destroyed);
+		assertEquals(FfmpegWatchdog.Verdict.TIMED_OUT, watchdog.unregister("job"));
+	}
+
+	@Test
+	void jobWithoutEstimateIsCappedByMaxRuntime() {
+		FakeProcess process = new FakeProcess();
+		long start = System.currentTimeMillis();
+		watchdog.register("job", process, 0);
+
+		advance(start, 359 * MINUTE);
+		watchdog.check(start + 359 * MINUTE);
+		assertFalse(process.destroyed);
+
+		advance(start, 361 * MINUTE);
+		watchdog.check(start + 361 * MINUTE);
+		assertTrue(process.destroyed);
+	}
+
+	@Test
+	void processIgnoringSigtermIsDestroyedForcibly() {
+		FakeProcess process = new FakeProcess();
+		process.ignoresSigterm = true;
+		long start = System.currentTimeMillis();
+		watchdog.register("job", process, 60 * MINUTE);
+
+		watchdog.check(start + 3 * MINUTE);
+		assertTrue(process.destroyed);
+		assertFalse(process.destroyedForcibly);
+
+		watchdog.check(start + 3 * MINUTE + TimeUnit.SECONDS.toMillis(16));
+		assertTrue(process.destroyedForcibly);
+	}
+
+	@Test
+	void finishedProcessIsLeftAlone() {
+		FakeProcess process = new FakeProcess();
+		process.alive = false;
+		long start = System.currentTimeMillis();
+		watchdog.register("job", process, 60 * MINUTE);
+
+		watchdog.check(start + 3 * MINUTE);
+
+		assertFalse(process.destroyed);
+		assertNull(watchdog.unregister("job"));
+	}
+
+	// keeps out_time advancing so only the deadline can fire
+	private void advance(long start, long elapsedMs) {
+		ReflectionTestUtils.setField(jobOf("job"), "lastAdvanceAt", start + elapsedMs);
+	}
+
+	private Object jobOf(String processId) {
+		Map<?, ?> jobs = (Map<?, ?>) ReflectionTestUtils.getField(watchdog, "jobs");
+		return jobs.get(processId);
+	}
+
+	private static final class FakeProcess extends Process {
+
+		volatile boolean alive = true;
+		volatile boolean ignoresSigterm;
+		volatile boolean destroyed;
+		volatile boolean destroyedForcibly;
+
+		@Override
+		public OutputStream getOutputStream() {
+			return OutputStream.nullOutputStream();
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return InputStream.nullInputStream();
+		}
+
+		@Override
+		public InputStream getErrorStream() {
+			return InputStream.nullInputStream();
+		}
+
+		@Override
+		public int waitFor() {
+			return 0;
+		}
+
+		@Override
+		public int exitValue() {
+			return 0;
+		}
+
+		@Override
+		public boolean isAlive() {
+			return alive;
+		}
+
+		@Override
+		public void destroy() {
+			destroyed = true;
+			if (!ignoresSigterm) {
+				alive = false;
+			}
+		}
+
+		@Override
+		public Process destroyForcibly() {
+			destroyedForcibly = true;
+			alive = false;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.mediaalterations.mediaservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+class JobResultIndexTests {
+
+	private static final String FINGERPRINT = "abc123";
+
+	private static final JobResultIndex.CachedResult RESULT = new JobResultIndex.CachedResult("downloads",
+			"out/first.mp4", "etag-1", "10 KB", "00:00:10.00");
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private JobResultIndex index;
+
+	@BeforeEach
+	void setUp() {
+		index = new JobResultIndex(new InMemoryS3(), meterRegistry);
+		ReflectionTestUtils.setField(index, "indexPrefix", ".dedup-index/");
+		ReflectionTestUtils.setField(index, "downloadsBucket", "downloads");
+		ReflectionTestUtils.setField(index, "maxWaitMinutes", 1L);
+	}
+
+	@Test
+	void firstJobOwnsTheClaim() {
+		JobResultIndex.Claim claim = index.awaitOrClaim(FINGERPRINT);
+
+		assertTrue(claim.isOwner());
+		assertTrue(claim.cached().isEmpty());
+	}
+
+	@Test
+	void waiterGetsTheClaimantsResult() throws Exception {
+		JobResultIndex.Claim owner = index.awaitOrClaim(FINGERPRINT);
+		CompletableFuture<JobResultIndex.Claim> waiter = CompletableFuture
+				.supplyAsync(() -> index.awaitOrClaim(FINGERPRINT));
+		awaitCoalesced(1);
+
+		index.complete(owner, RESULT);
+
+		JobResultIndex.Claim waited = waiter.get(5, TimeUnit.SECONDS);
+		assertFalse(waited.isOwner());
+		assertEquals(RESULT, waited.cached().orElseThrow());
+	}
+
+	@Test
+	void waiterTakesOverWhenTheClaimantAbandons() throws Exception {
+		JobResultIndex.Claim owner = index.awaitOrClaim(FINGERPRINT);
+		CompletableFuture<JobResultIndex.Claim> waiter = CompletableFuture
+				.supplyAsync(() -> index.awaitOrClaim(FINGERPRINT));
+		awaitCoalesced(1);
+
+		index.abandon(owner);
+
+		JobResultIndex.Claim waited = waiter.get(5, TimeUnit.SECONDS);
+		assertTrue(waited.isOwner());
+		assertTrue(waited.cached().isEmpty());
+	}
+
+	@Test
+	void nonOwnerReleaseLeavesTheRunningClaimAlone() throws Exception {
+		JobResultIndex.Claim owner = index.awaitOrClaim(FINGERPRINT);
+
+		// gives up straight away and runs ffmpeg itself
+		ReflectionTestUtils.setField(index, "maxWaitMinutes", 0L);
+		JobResultIndex.Claim impatient = index.awaitOrClaim(FINGERPRINT);
+		assertFalse(impatient.isOwner());
+		index.abandon(impatient);
+
+		// the owner is still running, so nobody else may claim the fingerprint
+		JobResultIndex.Claim next = index.awaitOrClaim(FINGERPRINT);
+		assertFalse(next.isOwner());
+
+		ReflectionTestUtils.setField(index, "maxWaitMinutes", 1L);
+		CompletableFuture<JobResultIndex.Claim> waiter = CompletableFuture
+				.supplyAsync(() -> index.awaitOrClaim(FINGERPRINT));
+		awaitCoalesced(3);
+		index.complete(owner, RESULT);
+
+		assertEquals(RESULT, waiter.get(5, TimeUnit.SECONDS).cached().orElseThrow());
+	}
+
+	@Test
+	void cacheHitDoesNotReleaseAnotherJobsClaim() throws Exception {
+		JobResultIndex.Claim first = index.awaitOrClaim(FINGERPRINT);
+		index.complete(first, RESULT);
+
+		JobResultIndex.Claim hit = index.awaitOrClaim(FINGERPRINT);
+		assertFalse(hit.isOwner());
+		assertEquals(RESULT, hit.cached().orElseThrow());
+
+		// the finally block of the cache hit runs abandon, a claim taken in
+		// the meantime must survive it
+		JobResultIndex.Claim other = index.awaitOrClaim("other");
+		index.abandon(hit);
+		ReflectionTestUtils.setField(index, "maxWaitMinutes", 0L);
+		assertTrue(other.isOwner());
+		assertFalse(index.awaitOrClaim("other").isOwner());
+	}
+
+	@Test
+	void completedIndexEntryIsReusedAfterTheClaimIsGone() {
+		JobResultIndex.Claim owner = index.awaitOrClaim(FINGERPRINT);
+		index.complete(owner, RESULT);
+		index.abandon(owner);
+
+		JobResultIndex.Claim claim = index.awaitOrClaim(FINGERPRINT);
+		assertFalse(claim.isOwner());
+		assertEquals(RESULT, claim.cached().orElseThrow());
+	}
+
+	private void awaitCoalesced(int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (meterRegistry.counter("media.dedup.coalesced").count() < expected) {
+			if (System.nanoTime() > deadline) {
+				throw new AssertionError("waiter never started waiting");
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	// index entries are kept in memory, every other object exists with ETag "etag-1"
+	private static final class InMemoryS3 implements S3Client {
+
+		private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+		@Override
+		public PutObjectResponse putObject(PutObjectRequest request, RequestBody body) {
+			try (var in = body.contentStreamProvider().newStream()) {
+				objects.put(request.key(), in.readAllBytes());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return PutObjectResponse.builder().eTag("etag-index").build();
+		}
+
+		@Override
+		public ResponseBytes<GetObjectResponse> getObjectAsBytes(GetObjectRequest request) {
+			byte[] bytes = objects.get(request.key());
+			if (bytes == null) {
+				throw (S3Exception) S3Exception.builder().statusCode(404).message("Not Found").build();
+			}
+			return ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), bytes);
+		}
+
+		@Override
+		public HeadObjectResponse headObject(HeadObjectRequest request) {
+			return HeadObjectResponse.builder().eTag("etag-1").build();
+		}
+
+		@Override
+		public String serviceName() {
+			return "s3";
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.mediaalterations.mediaservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import com.mediaalterations.mediaservice.dto.BatchStepDto;
+import com.mediaalterations.mediaservice.exception.MediaProcessingException;
+
+class MediaServiceImplTests {
+
+	private static BatchStepDto step(UUID id, UUID... dependsOn) {
+		return new BatchStepDto(id, "-i in.mp4 out.mp4", id + ".mp4", List.of(dependsOn), null, null);
+	}
+
+	@Test
+	void orderStepsPutsDependenciesFirst() {
+		UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID();
+		List<BatchStepDto> ordered = MediaServiceImpl.orderSteps(List.of(step(c, a, b), step(b, a), step(a)));
+
+		assertEquals(List.of(a, b, c), ordered.stream().map(BatchStepDto::id).toList());
+	}
+
+	@Test
+	void orderStepsRejectsCycles() {
+		UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID();
+
+		assertThrows(MediaProcessingException.class,
+				() -> MediaServiceImpl.orderSteps(List.of(step(a, c), step(b, a), step(c, b))));
+		assertThrows(MediaProcessingException.class, () -> MediaServiceImpl.orderSteps(List.of(step(a, a))));
+	}
+
+	@Test
+	void orderStepsRejectsUnknownDependencies() {
+		UUID a = UUID.randomUUID();
+
+		assertThrows(MediaProcessingException.class,
+				() -> MediaServiceImpl.orderSteps(List.of(step(a, UUID.randomUUID()))));
+	}
+
+	@Test
+	void orderStepsRejectsDuplicateIds() {
+		UUID a = UUID.randomUUID();
+
+		assertThrows(MediaProcessingException.class, () -> MediaServiceImpl.orderSteps(List.of(step(a), step(a))));
+	}
+
+	@Test
+	void stepsWithoutDependsOnHaveNoDependencies() {
+		BatchStepDto step = new BatchStepDto(UUID.randomUUID(), "-i in.mp4 out.mp4", "out.mp4", null, null, null);
+
+		assertEquals(List.of(), MediaServiceImpl.dependenciesOf(step));
+	}
+}
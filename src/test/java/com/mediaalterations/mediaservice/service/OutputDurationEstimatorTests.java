@@ -0,0 +1,111 @@
+package com.mediaalterations.mediaservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class OutputDurationEstimatorTests {
+
+	private final OutputDurationEstimator estimator = new OutputDurationEstimator();
+
+	private long estimate(Map<String, Double> durations, String... args) {
+		List<String> command = new ArrayList<>(List.of("ffmpeg"));
+		command.addAll(List.of(args));
+		return estimator.estimateOutputDurationMs(command, durations);
+	}
+
+	@Test
+	void inputSeekAndDurationTrimTheInput() {
+		assertEquals(20_000, estimate(Map.of("a.mp4", 60.0), "-ss", "10", "-t", "20", "-i", "a.mp4", "out.mp4"));
+		assertEquals(30_000, estimate(Map.of("a.mp4", 60.0), "-ss", "10", "-to", "40", "-i", "a.mp4", "out.mp4"));
+	}
+
+	@Test
+	void outputSeekAndDurationTrimTheResult() {
+		assertEquals(50_000, estimate(Map.of("a.mp4", 60.0), "-i", "a.mp4", "-ss", "10", "out.mp4"));
+		assertEquals(15_000, estimate(Map.of("a.mp4", 60.0), "-i", "a.mp4", "-t", "00:00:15", "out.mp4"));
+	}
+
+	@Test
+	void concatSumsInputs() {
+		assertEquals(70_000, estimate(Map.of("a.mp4", 30.0, "b.mp4", 40.0),
+				"-i", "a.mp4", "-i", "b.mp4", "-filter_complex", "[0:v][1:v]concat=n=2:v=1:a=0", "out.mp4"));
+	}
+
+	@Test
+	void overlayAndAmixLastAsLongAsTheLongestInput() {
+		Map<String, Double> durations = Map.of("a.mp4", 30.0, "b.mp4", 40.0);
+		assertEquals(40_000, estimate(durations,
+				"-i", "a.mp4", "-i", "b.mp4", "-filter_complex", "[0:v][1:v]overlay=10:10", "out.mp4"));
+		assertEquals(40_000, estimate(durations,
+				"-i", "a.mp4", "-i", "b.mp4", "-filter_complex", "[0:a][1:a]amix=inputs=2", "out.mp4"));
+		assertEquals(30_000, estimate(durations,
+				"-i", "a.mp4", "-i", "b.mp4", "-filter_complex", "[0:a][1:a]amix=inputs=2:duration=first", "out.mp4"));
+	}
+
+	@Test
+	void shortestStopsAtTheShortestInput() {
+		assertEquals(30_000, estimate(Map.of("a.mp4", 30.0, "b.mp3", 40.0),
+				"-i", "a.mp4", "-i", "b.mp3", "-map", "0:v", "-map", "1:a", "-shortest", "out.mp4"));
+	}
+
+	@Test
+	void trimFilterCutsTheGraphOutput() {
+		assertEquals(10_000, estimate(Map.of("a.mp4", 60.0),
+				"-i", "a.mp4", "-vf", "trim=start=5:end=15,setpts=PTS-STARTPTS", "out.mp4"));
+	}
+
+	@Test
+	void setptsAndChainedAtempoChangeSpeed() {
+		assertEquals(20_000, estimate(Map.of("a.mp4", 10.0), "-i", "a.mp4", "-vf", "setpts=2.0*PTS", "out.mp4"));
+		assertEquals(5_000, estimate(Map.of("a.mp4", 10.0), "-i", "a.mp4", "-vf", "setpts=PTS/2", "out.mp4"));
+		assertEquals(10_000, estimate(Map.of("a.mp3", 40.0),
+				"-i", "a.mp3", "-af", "atempo=2.0,atempo=2.0", "out.mp3"));
+	}
+
+	@Test
+	void loopedImageWithShortestEndsWithTheAudio() {
+		assertEquals(30_000, estimate(Map.of("cover.jpg", 0.04, "a.mp3", 30.0),
+				"-loop", "1", "-i", "cover.jpg", "-i", "a.mp3", "-shortest", "out.mp4"));
+		assertEquals(12_000, estimate(Map.of("cover.jpg", 0.04, "a.mp3", 30.0),
+				"-loop", "1", "-t", "12", "-i", "cover.jpg", "-i", "a.mp3", "-shortest", "out.mp4"));
+	}
+
+	@Test
+	void loopedImageWithoutShortestNeverEnds() {
+		// ffmpeg would run forever, so the estimate falls back to the input total
+		assertEquals(30_040, estimate(Map.of("cover.jpg", 0.04, "a.mp3", 30.0),
+				"-loop", "1", "-i", "cover.jpg", "-i", "a.mp3", "out.mp4"));
+		assertEquals(20_000, estimate(Map.of("cover.jpg", 0.04, "a.mp3", 30.0),
+				"-loop", "1", "-i", "cover.jpg", "-i", "a.mp3", "-t", "20", "out.mp4"));
+	}
+
+	@Test
+	void streamLoopRepeatsTheInput() {
+		assertEquals(30_000, estimate(Map.of("a.mp4", 10.0), "-stream_loop", "2", "-i", "a.mp4", "out.mp4"));
+		assertEquals(45_000, estimate(Map.of("a.mp4", 10.0),
+				"-stream_loop", "-1", "-i", "a.mp4", "-t", "45", "out.mp4"));
+	}
+
+	@Test
+	void unboundedOutputFallsBackToInputTotal() {
+		assertEquals(10_000, estimate(Map.of("a.mp4", 10.0), "-stream_loop", "-1", "-i", "a.mp4", "out.mp4"));
+	}
+
+	@Test
+	void parseTimeFormats() {
+		assertEquals(3723.5, OutputDurationEstimator.parseTime("01:02:03.5"));
+		assertEquals(90.0, OutputDurationEstimator.parseTime("1:30"));
+		assertEquals(1.5, OutputDurationEstimator.parseTime("1500ms"));
+		assertEquals(0.25, OutputDurationEstimator.parseTime("250000us"));
+		assertEquals(12.0, OutputDurationEstimator.parseTime("12s"));
+		assertEquals(7.25, OutputDurationEstimator.parseTime("7.25"));
+		assertNull(OutputDurationEstimator.parseTime("abc"));
+		assertNull(OutputDurationEstimator.parseTime(null));
+	}
+}
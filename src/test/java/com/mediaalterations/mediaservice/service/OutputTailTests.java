@@ -0,0 +1,52 @@
+package com.mediaalterations.mediaservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class OutputTailTests {
+
+	private static final String PRESIGNED = "https://garage.local:3900/media/in/a.mp4"
+			+ "?X-Amz-Algorithm=AWS4-HMAC-SHA256&X-Amz-Credential=GK123%2F20261019%2Fgarage%2Fs3%2Faws4_request"
+			+ "&X-Amz-Date=20261019T120000Z&X-Amz-Expires=3600&X-Amz-SignedHeaders=host&X-Amz-Signature=deadbeef";
+
+	@Test
+	void presignedQueryStringsAreRedacted() {
+		OutputTail tail = new OutputTail(10);
+		tail.add("[https @ 0x55d1] HTTP error 403 Forbidden");
+		tail.add(PRESIGNED + ": Server returned 403 Forbidden (access denied)");
+
+		String output = tail.toString();
+		assertFalse(output.contains("X-Amz-Signature"));
+		assertFalse(output.contains("X-Amz-Credential"));
+		assertTrue(output.contains(
+				"https://garage.local:3900/media/in/a.mp4?<redacted>: Server returned 403 Forbidden (access denied)"));
+	}
+
+	@Test
+	void quotedUrlsKeepTheirQuotes() {
+		assertEquals("Error opening input file 'https://garage.local/media/in/a.mp4?<redacted>'.",
+				OutputTail.redact("Error opening input file '" + PRESIGNED.replace(":3900", "") + "'."));
+	}
+
+	@Test
+	void linesWithoutUrlsAreUntouched() {
+		String line = "[h264 @ 0x55d1] Invalid NAL unit size (1234 > 567)? skipping";
+		assertEquals(line, OutputTail.redact(line));
+		assertEquals("/tmp/in.mp4: No such file or directory",
+				OutputTail.redact("/tmp/in.mp4: No such file or directory"));
+	}
+
+	@Test
+	void onlyTheLastLinesAreKept() {
+		OutputTail tail = new OutputTail(2);
+		tail.add("one");
+		tail.add("two");
+		tail.add("three");
+
+		assertEquals("... 1 earlier lines omitted" + System.lineSeparator() + "two" + System.lineSeparator() + "three",
+				tail.toString());
+	}
+}